@@ -0,0 +1,51 @@
+package legion.examples.simple;
+
+import com.google.common.collect.ImmutableList;
+import legion.Generator;
+import legion.Loader;
+import legion.Metrics;
+import legion.runner.ExecutionMode;
+import legion.runner.LoadGenerator;
+import legion.runner.LoadOptions;
+
+import java.util.Properties;
+
+// Compares loader execution modes with many concurrent blocking clients:
+// every loader call blocks for 50ms, so achieved QPS is limited only by concurrency.
+public class ExecutionModeBenchmark {
+    private static final int QUERIES = 200000;
+    private static final long BLOCK_MILLIS = 50;
+
+    public static void main(String[] args) throws InterruptedException {
+        int concurrency = args.length > 0 ? Integer.parseInt(args[0]) : 5000;
+        for (ExecutionMode mode : ExecutionMode.values()) {
+            run(mode, concurrency);
+        }
+    }
+
+    private static void run(ExecutionMode mode, int concurrency) throws InterruptedException {
+        LoadOptions options = new LoadOptions();
+        options.executionMode = mode;
+        options.loaderConcurrency = concurrency;
+        Metrics metrics = new Metrics();
+        LoadGenerator<String> generator = new LoadGenerator<>(-1, QUERIES, -1, 4, options, metrics);
+        Generator<String> taskGenerator = () -> "task";
+        Loader<String> loader = task -> Thread.sleep(BLOCK_MILLIS);
+        long start = System.nanoTime();
+        generator.doTest(
+                ImmutableList.of(taskGenerator, taskGenerator, taskGenerator, taskGenerator),
+                ImmutableList.of(loader),
+                new Properties()
+        );
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf(
+                "%s: concurrency %s, %s queries in %.2fs, %.0f qps (ideal %.0f qps)\n",
+                mode,
+                concurrency,
+                metrics.queries.getCount(),
+                seconds,
+                metrics.queries.getCount() / seconds,
+                concurrency * 1000.0 / BLOCK_MILLIS
+        );
+    }
+}
@@ -0,0 +1,164 @@
+/*
+ * Copyright (c) 2015, IponWeb (http://www.iponweb.com)
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the <organization> nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package legion;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+// Aggregates exceptions of loaders: counts them by class and keeps a bounded ring of samples with stack traces and
+// message prefixes, at most `samplesPerInterval` per interval. Only sampled exceptions are logged and described,
+// so a failing target doesn't turn the agent into a log writer and doesn't change the load pattern.
+public class ExceptionLog {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ExceptionLog.class);
+    public static final int MESSAGE_PREFIX_LENGTH = 64;
+    // exceptions of new classes are counted together when there are too many distinct ones
+    public static final int MAX_KINDS = 1000;
+    public static final String OTHER_KIND = "(other)";
+
+    public static class Sample {
+        // milliseconds since epoch
+        public final long time;
+        public final String kind;
+        public final Throwable exception;
+
+        Sample(long time, String kind, Throwable exception) {
+            this.time = time;
+            this.kind = kind;
+            this.exception = exception;
+        }
+    }
+
+    private final int samplesPerInterval;
+    private final long intervalNanos;
+    private final int capacity;
+    // by exception class, messages often carry request ids and would make every exception a kind of its own
+    private final Map<Class<?>, LongAdder> counts = new ConcurrentHashMap<>();
+    private final LongAdder otherCount = new LongAdder();
+    private final Deque<Sample> samples = new ArrayDeque<>();
+    private final AtomicLong intervalStart = new AtomicLong(System.nanoTime());
+    private final AtomicInteger sampledInInterval = new AtomicInteger();
+    // exceptions not logged since the last logged one
+    private final AtomicLong suppressed = new AtomicLong();
+
+    public ExceptionLog(int samplesPerInterval, long intervalMs, int capacity) {
+        if (samplesPerInterval < 0 || intervalMs <= 0 || capacity < 0) {
+            throw new IllegalArgumentException("Wrong exception sampling parameters");
+        }
+        this.samplesPerInterval = samplesPerInterval;
+        this.intervalNanos = intervalMs * 1000000;
+        this.capacity = capacity;
+    }
+
+    // cause of CompletionException is taken for async loaders
+    private static Throwable unwrap(Throwable exception) {
+        if (exception instanceof CompletionException && exception.getCause() != null) {
+            return exception.getCause();
+        }
+        return exception;
+    }
+
+    // class and message prefix of the exception
+    public static String kind(Throwable exception) {
+        exception = unwrap(exception);
+        String message = exception.getMessage();
+        if (message == null) {
+            return exception.getClass().getName();
+        }
+        if (message.length() > MESSAGE_PREFIX_LENGTH) {
+            message = message.substring(0, MESSAGE_PREFIX_LENGTH);
+        }
+        return exception.getClass().getName() + ": " + message;
+    }
+
+    public void record(Throwable exception) {
+        Class<?> type = unwrap(exception).getClass();
+        LongAdder count = counts.get(type);
+        if (count == null) {
+            count = counts.size() >= MAX_KINDS ? otherCount : counts.computeIfAbsent(type, k -> new LongAdder());
+        }
+        count.increment();
+        if (!trySample()) {
+            suppressed.incrementAndGet();
+            return;
+        }
+        String kind = kind(exception);
+        if (capacity > 0) {
+            synchronized (samples) {
+                if (samples.size() == capacity) {
+                    samples.removeFirst();
+                }
+                samples.addLast(new Sample(System.currentTimeMillis(), kind, exception));
+            }
+        }
+        long notLogged = suppressed.getAndSet(0);
+        if (notLogged > 0) {
+            LOGGER.info("Exception in loader ({} exceptions since the previous one are not logged)", notLogged, exception);
+        } else {
+            LOGGER.info("Exception in loader", exception);
+        }
+    }
+
+    private boolean trySample() {
+        long now = System.nanoTime();
+        long start = intervalStart.get();
+        if (now - start >= intervalNanos && intervalStart.compareAndSet(start, now)) {
+            sampledInInterval.set(0);
+        }
+        return sampledInInterval.incrementAndGet() <= samplesPerInterval;
+    }
+
+    // number of exceptions by class name
+    public Map<String, Long> getCounts() {
+        Map<String, Long> result = new TreeMap<>();
+        counts.forEach((type, count) -> result.put(type.getName(), count.sum()));
+        long other = otherCount.sum();
+        if (other > 0) {
+            result.put(OTHER_KIND, other);
+        }
+        return result;
+    }
+
+    // the latest samples, oldest first
+    public List<Sample> getSamples() {
+        synchronized (samples) {
+            return Collections.unmodifiableList(new ArrayList<>(samples));
+        }
+    }
+}
@@ -29,6 +29,7 @@ package legion;
 
 import com.codahale.metrics.MetricRegistry;
 
+import java.util.List;
 import java.util.Properties;
 
 public interface Generator<T> {
@@ -37,6 +38,24 @@ public interface Generator<T> {
 
     T generate() throws Exception;
 
+    // Generators returning batch size greater than 1 are asked for tasks with generate(List, int),
+    // so they can build many tasks at once and the engine schedules and enqueues them together.
+    default int batchSize() {
+        return 1;
+    }
+
+    // adds up to `count` tasks into `batch` and returns number of added tasks, 0 means generator is exhausted
+    default int generate(List<T> batch, int count) throws Exception {
+        for (int i = 0; i < count; ++i) {
+            T task = generate();
+            if (task == null) {
+                return i;
+            }
+            batch.add(task);
+        }
+        return count;
+    }
+
     default void close() {
     }
 }
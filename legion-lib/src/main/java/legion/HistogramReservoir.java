@@ -0,0 +1,114 @@
+/*
+ * Copyright (c) 2015, IponWeb (http://www.iponweb.com)
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the <organization> nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package legion;
+
+import com.codahale.metrics.Reservoir;
+import com.codahale.metrics.Snapshot;
+
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+
+// Reservoir which counts every value in LatencyHistogram: nothing is sampled out, recording is lock-free
+// and doesn't allocate, unlike codahale's default exponentially decaying reservoir.
+public class HistogramReservoir implements Reservoir {
+    private final LatencyHistogram histogram;
+
+    public HistogramReservoir() {
+        this(new LatencyHistogram());
+    }
+
+    public HistogramReservoir(LatencyHistogram histogram) {
+        this.histogram = histogram;
+    }
+
+    public LatencyHistogram getHistogram() {
+        return histogram;
+    }
+
+    @Override
+    public int size() {
+        return (int) Long.min(histogram.getSnapshot().getCount(), Integer.MAX_VALUE);
+    }
+
+    @Override
+    public void update(long value) {
+        histogram.update(value);
+    }
+
+    @Override
+    public Snapshot getSnapshot() {
+        LatencyHistogram.Snapshot snapshot = histogram.getSnapshot();
+        return new Snapshot() {
+            @Override
+            public double getValue(double quantile) {
+                return snapshot.getValue(quantile);
+            }
+
+            @Override
+            public long[] getValues() {
+                return snapshot.getBucketValues();
+            }
+
+            @Override
+            public int size() {
+                return (int) Long.min(snapshot.getCount(), Integer.MAX_VALUE);
+            }
+
+            @Override
+            public long getMax() {
+                return snapshot.getMax();
+            }
+
+            @Override
+            public double getMean() {
+                return snapshot.getMean();
+            }
+
+            @Override
+            public long getMin() {
+                return snapshot.getMin();
+            }
+
+            @Override
+            public double getStdDev() {
+                return snapshot.getStdDev();
+            }
+
+            @Override
+            public void dump(OutputStream output) {
+                try (PrintWriter out = new PrintWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8))) {
+                    for (long value : getValues()) {
+                        out.printf("%d%n", value);
+                    }
+                }
+            }
+        };
+    }
+}
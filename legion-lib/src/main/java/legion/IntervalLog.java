@@ -0,0 +1,108 @@
+/*
+ * Copyright (c) 2015, IponWeb (http://www.iponweb.com)
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the <organization> nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package legion;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Cuts cumulative latency histograms into fixed intervals and keeps a bounded ring of the latest ones,
+// so latency can be analysed over time, not only for the whole run.
+public class IntervalLog {
+    public static class Interval {
+        // milliseconds since start of the test
+        public final long start;
+        public final long end;
+        public final Map<String, LatencyHistogram.Snapshot> histograms;
+
+        Interval(long start, long end, Map<String, LatencyHistogram.Snapshot> histograms) {
+            this.start = start;
+            this.end = end;
+            this.histograms = Collections.unmodifiableMap(histograms);
+        }
+    }
+
+    private final int capacity;
+    private final Metrics metrics;
+    private final Map<String, LatencyHistogram> recorders = new LinkedHashMap<>();
+    private final Deque<Interval> intervals = new ArrayDeque<>();
+    private Map<String, LatencyHistogram.Snapshot> previous;
+    private long previousTime;
+
+    public IntervalLog(int capacity, Metrics metrics) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be positive");
+        }
+        this.capacity = capacity;
+        this.metrics = metrics;
+    }
+
+    private Map<String, LatencyHistogram.Snapshot> snapshots() {
+        Map<String, LatencyHistogram.Snapshot> snapshots = new LinkedHashMap<>();
+        recorders.forEach((name, histogram) -> snapshots.put(name, histogram.getSnapshot()));
+        return snapshots;
+    }
+
+    // `time` is milliseconds since start of the test; the first call only marks the start of the first interval
+    public synchronized void cut(long time) {
+        if (previous != null && time <= previousTime) {
+            // late call racing with a newer one
+            return;
+        }
+        if (previous == null) {
+            // recorders of task types are added after the log is created, but before the test starts
+            recorders.putAll(metrics.histograms);
+        }
+        Map<String, LatencyHistogram.Snapshot> current = snapshots();
+        if (previous != null) {
+            Map<String, LatencyHistogram.Snapshot> histograms = new LinkedHashMap<>();
+            current.forEach((name, snapshot) -> histograms.put(name, snapshot.minus(previous.get(name))));
+            if (intervals.size() == capacity) {
+                intervals.removeFirst();
+            }
+            intervals.addLast(new Interval(previousTime, time, histograms));
+        }
+        previous = current;
+        previousTime = time;
+    }
+
+    // intervals which overlap [from, to)
+    public synchronized List<Interval> get(long from, long to) {
+        List<Interval> result = new ArrayList<>();
+        for (Interval interval : intervals) {
+            if (interval.end > from && interval.start < to) {
+                result.add(interval);
+            }
+        }
+        return result;
+    }
+}
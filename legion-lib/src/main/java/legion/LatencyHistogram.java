@@ -0,0 +1,237 @@
+/*
+ * Copyright (c) 2015, IponWeb (http://www.iponweb.com)
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the <organization> nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package legion;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+// Lock-free high dynamic range histogram of non-negative values: every value is counted in a bucket,
+// bucket width is proportional to the value, so relative precision is the same over the whole range of long
+// and memory is fixed. Counts are cumulative, statistics over a time window are taken as a difference of two
+// snapshots.
+public class LatencyHistogram {
+    public static final int DEFAULT_SIGNIFICANT_DIGITS = 2;
+    public static final int MAX_SIGNIFICANT_DIGITS = 3;
+
+    private final int subBucketBits;
+    private final AtomicLongArray counts;
+    private final AtomicLong min = new AtomicLong(Long.MAX_VALUE);
+    private final AtomicLong max = new AtomicLong(Long.MIN_VALUE);
+    private final LongAdder sum = new LongAdder();
+
+    public LatencyHistogram() {
+        this(DEFAULT_SIGNIFICANT_DIGITS);
+    }
+
+    // values are kept with relative error below 10^-significantDigits
+    public LatencyHistogram(int significantDigits) {
+        if (significantDigits < 1 || significantDigits > MAX_SIGNIFICANT_DIGITS) {
+            throw new IllegalArgumentException("Significant digits must be from 1 to " + MAX_SIGNIFICANT_DIGITS);
+        }
+        subBucketBits = 64 - Long.numberOfLeadingZeros((long) Math.pow(10, significantDigits) - 1);
+        counts = new AtomicLongArray(bucketCount(subBucketBits));
+    }
+
+    static int bucketCount(int subBucketBits) {
+        return (64 - subBucketBits) << subBucketBits;
+    }
+
+    static int bucket(int subBucketBits, long value) {
+        if (value < 1L << subBucketBits) {
+            return (int) Long.max(value, 0);
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int subBucket = (int) (value >>> (exponent - subBucketBits)) & ((1 << subBucketBits) - 1);
+        return ((exponent - subBucketBits + 1) << subBucketBits) + subBucket;
+    }
+
+    static long bucketMin(int subBucketBits, int bucket) {
+        int subBuckets = 1 << subBucketBits;
+        if (bucket < subBuckets) {
+            return bucket;
+        }
+        int shift = (bucket >> subBucketBits) - 1;
+        return (long) (subBuckets + (bucket & (subBuckets - 1))) << shift;
+    }
+
+    // highest value which falls into the bucket
+    static long bucketMax(int subBucketBits, int bucket) {
+        if (bucket < 1 << subBucketBits) {
+            return bucket;
+        }
+        int shift = (bucket >> subBucketBits) - 1;
+        return bucketMin(subBucketBits, bucket) + (1L << shift) - 1;
+    }
+
+    public void update(long value) {
+        value = Long.max(value, 0);
+        counts.incrementAndGet(bucket(subBucketBits, value));
+        sum.add(value);
+        // extremes change rarely, so these loops almost never write
+        long currentMin = min.get();
+        while (value < currentMin && !min.compareAndSet(currentMin, value)) {
+            currentMin = min.get();
+        }
+        long currentMax = max.get();
+        while (value > currentMax && !max.compareAndSet(currentMax, value)) {
+            currentMax = max.get();
+        }
+    }
+
+    public Snapshot getSnapshot() {
+        int length = counts.length();
+        int[] buckets = new int[length];
+        long[] values = new long[length];
+        int size = 0;
+        for (int i = 0; i < length; ++i) {
+            long count = counts.get(i);
+            if (count > 0) {
+                buckets[size] = i;
+                values[size++] = count;
+            }
+        }
+        return new Snapshot(
+                subBucketBits,
+                Arrays.copyOf(buckets, size),
+                Arrays.copyOf(values, size),
+                sum.sum(),
+                min.get(),
+                max.get()
+        );
+    }
+
+    // keeps only non-empty buckets, so snapshots of short intervals are small
+    public static class Snapshot {
+        private final int subBucketBits;
+        // indexes of non-empty buckets in ascending order and their counts
+        private final int[] buckets;
+        private final long[] counts;
+        private final long count;
+        private final long sum;
+        private final long min;
+        private final long max;
+
+        private Snapshot(int subBucketBits, int[] buckets, long[] counts, long sum, long min, long max) {
+            this.subBucketBits = subBucketBits;
+            this.buckets = buckets;
+            this.counts = counts;
+            long total = 0;
+            for (long c : counts) {
+                total += c;
+            }
+            this.count = total;
+            this.sum = sum;
+            this.min = min;
+            this.max = max;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        // values recorded after `previous` snapshot of the same histogram was taken,
+        // extremes are known only with bucket precision
+        public Snapshot minus(Snapshot previous) {
+            int[] resultBuckets = new int[buckets.length];
+            long[] resultCounts = new long[buckets.length];
+            int size = 0;
+            int j = 0;
+            for (int i = 0; i < buckets.length; ++i) {
+                while (j < previous.buckets.length && previous.buckets[j] < buckets[i]) {
+                    j++;
+                }
+                long value = counts[i];
+                if (j < previous.buckets.length && previous.buckets[j] == buckets[i]) {
+                    value -= previous.counts[j];
+                }
+                if (value > 0) {
+                    resultBuckets[size] = buckets[i];
+                    resultCounts[size++] = value;
+                }
+            }
+            return new Snapshot(
+                    subBucketBits,
+                    Arrays.copyOf(resultBuckets, size),
+                    Arrays.copyOf(resultCounts, size),
+                    sum - previous.sum,
+                    size == 0 ? Long.MAX_VALUE : Long.max(bucketMin(subBucketBits, resultBuckets[0]), min),
+                    size == 0 ? Long.MIN_VALUE : Long.min(bucketMax(subBucketBits, resultBuckets[size - 1]), max)
+            );
+        }
+
+        // upper bound of the value at the given quantile, 0 for empty snapshot
+        public long getValue(double quantile) {
+            if (count == 0) {
+                return 0;
+            }
+            long rank = Long.max((long) Math.ceil(quantile * count), 1);
+            long seen = 0;
+            for (int i = 0; i < buckets.length; ++i) {
+                seen += counts[i];
+                if (seen >= rank) {
+                    return Long.min(bucketMax(subBucketBits, buckets[i]), max);
+                }
+            }
+            return max;
+        }
+
+        public long getMin() {
+            return count == 0 ? 0 : min;
+        }
+
+        public long getMax() {
+            return count == 0 ? 0 : max;
+        }
+
+        public double getMean() {
+            return count == 0 ? 0 : (double) sum / count;
+        }
+
+        // deviation takes the middle of each bucket
+        public double getStdDev() {
+            if (count < 2) {
+                return 0;
+            }
+            double mean = getMean();
+            double squares = 0;
+            for (int i = 0; i < buckets.length; ++i) {
+                int bucket = buckets[i];
+                double diff = (bucketMin(subBucketBits, bucket) + (double) bucketMax(subBucketBits, bucket)) / 2 - mean;
+                squares += counts[i] * diff * diff;
+            }
+            return Math.sqrt(squares / (count - 1));
+        }
+
+        // upper bounds of non-empty buckets
+        public long[] getBucketValues() {
+            return Arrays.stream(buckets).mapToLong(b -> bucketMax(subBucketBits, b)).toArray();
+        }
+    }
+}
@@ -30,6 +30,7 @@ package legion;
 import com.codahale.metrics.MetricRegistry;
 
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Properties;
 
 public interface LoadTest<Task> {
@@ -42,4 +43,13 @@ public interface LoadTest<Task> {
     Collection<Generator<Task>> getGenerators();
 
     Collection<Loader<Task>> getLoaders();
+
+    default Collection<AsyncLoader<Task>> getAsyncLoaders() {
+        return Collections.emptyList();
+    }
+
+    // null when tasks are not split into types
+    default TaskClassifier<Task> getTaskClassifier() {
+        return null;
+    }
 }
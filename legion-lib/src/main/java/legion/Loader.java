@@ -31,6 +31,8 @@ import com.codahale.metrics.MetricRegistry;
 
 import java.util.Properties;
 
+// When LoadOptions.loaderConcurrency is greater than the number of loaders, one loader is shared round-robin by
+// several worker threads, so run() must be thread-safe then.
 public interface Loader<T> {
     default void init(Properties props, MetricRegistry registry) {
     }
@@ -27,44 +27,245 @@
 
 package legion;
 
+import com.codahale.metrics.Counter;
 import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Histogram;
 import com.codahale.metrics.Meter;
+import com.codahale.metrics.Metered;
 import com.codahale.metrics.MetricRegistry;
 import com.codahale.metrics.Timer;
 
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntSupplier;
 
 public class Metrics {
+    // values recorded during warm-up, they are subtracted from cumulative values to get the measured window
+    public static class Warmup {
+        // milliseconds
+        public final long duration;
+        public final Map<String, LatencyHistogram.Snapshot> histograms;
+        public final long success;
+        public final long exceptions;
+        public final long timeouts;
+        // counters of task types by name
+        public final Map<String, Long> counts;
+
+        Warmup(
+                long duration,
+                Map<String, LatencyHistogram.Snapshot> histograms,
+                long success,
+                long exceptions,
+                long timeouts,
+                Map<String, Long> counts
+        ) {
+            this.duration = duration;
+            this.histograms = Collections.unmodifiableMap(histograms);
+            this.success = success;
+            this.exceptions = exceptions;
+            this.timeouts = timeouts;
+            this.counts = Collections.unmodifiableMap(counts);
+        }
+    }
+
+    // recorders of tasks of one type, see TaskClassifier
+    public static class Tag {
+        public final String name;
+        // service and response time of tasks of the type (timed out ones as TimeoutPolicy says)
+        public final LatencyHistogram queries;
+        public final LatencyHistogram responses;
+        // numbers of successful, failed and timed out tasks
+        public final LongAdder success = new LongAdder();
+        public final LongAdder exceptions = new LongAdder();
+        public final LongAdder timeouts = new LongAdder();
+
+        Tag(String name, int significantDigits) {
+            this.name = name;
+            queries = new LatencyHistogram(significantDigits);
+            responses = new LatencyHistogram(significantDigits);
+        }
+
+        private Map<String, LatencyHistogram> recorders() {
+            Map<String, LatencyHistogram> recorders = new LinkedHashMap<>();
+            String prefix = TAGS_METRIC_PREFIX + name;
+            recorders.put(prefix + TAG_QUERIES_SUFFIX, queries);
+            recorders.put(prefix + TAG_RESPONSES_SUFFIX, responses);
+            return recorders;
+        }
+
+        private Map<String, LongAdder> counters() {
+            Map<String, LongAdder> counters = new LinkedHashMap<>();
+            String prefix = TAGS_METRIC_PREFIX + name;
+            counters.put(prefix + TAG_SUCCESS_SUFFIX, success);
+            counters.put(prefix + TAG_EXCEPTIONS_SUFFIX, exceptions);
+            counters.put(prefix + TAG_TIMEOUTS_SUFFIX, timeouts);
+            return counters;
+        }
+    }
+
     public static final String GENERATOR_METRIC_NAME = ".generator";
     public static final String QUERIES_METRIC_NAME = ".queries";
+    public static final String RESPONSES_METRIC_NAME = ".responses";
+    public static final String START_LAG_METRIC_NAME = ".startLag";
+    public static final String QUEUE_WAIT_METRIC_NAME = ".queueWait";
     public static final String SUCCESS_METRIC_NAME = ".success";
     public static final String EXCEPTION_METRIC_NAME = ".exception";
+    public static final String TIMEOUTS_METRIC_NAME = ".timeouts";
     public static final String START_DATE_METRIC_NAME = ".startDate";
     public static final String DURATION_METRIC_NAME = ".duration";
+    // internal metrics of the engine itself, per thread ones are named `.engine.<thread name>.<metric>`
+    public static final String ENGINE_METRIC_PREFIX = ".engine.";
+    public static final String QUEUE_DEPTH_METRIC_NAME = ".engine.queueDepth";
+    public static final String ACTIVE_LOADERS_METRIC_NAME = ".engine.activeLoaders";
+    public static final String SCHEDULER_LAG_METRIC_NAME = ".engine.schedulerLag";
+    public static final String PREGENERATED_METRIC_NAME = ".engine.pregenerated";
+    public static final String PREGENERATION_HEAP_METRIC_NAME = ".engine.pregenerationHeap";
+    // recorders and counters of task types are named `.tags.<tag>.<suffix>`
+    public static final String TAGS_METRIC_PREFIX = ".tags.";
+    public static final String TAG_QUERIES_SUFFIX = ".queries";
+    public static final String TAG_RESPONSES_SUFFIX = ".responses";
+    public static final String TAG_SUCCESS_SUFFIX = ".success";
+    public static final String TAG_EXCEPTIONS_SUFFIX = ".exceptions";
+    public static final String TAG_TIMEOUTS_SUFFIX = ".timeouts";
+    public static final String BUSY_TIME_SUFFIX = ".busy";
+    public static final String IDLE_TIME_SUFFIX = ".idle";
+    public static final String BLOCKED_TIME_SUFFIX = ".blocked";
+    public static final String RUNNING_TIME_SUFFIX = ".running";
+
+    // outcome of stopping the test before its generators were exhausted
+    public static class Stop {
+        public final String mode;
+        // queued tasks which were not run, tasks taken by loaders and not completed when stop was requested (including
+        // ones waiting for their start time) and tasks completed while stopping
+        public final long dropped;
+        public final long inFlight;
+        public final long completed;
+        // loader threads interrupted after the timeout and ones which still didn't exit, left behind
+        public final int interrupted;
+        public final int abandoned;
+        // milliseconds
+        public final long duration;
+
+        public Stop(String mode, long dropped, long inFlight, long completed, int interrupted, int abandoned, long duration) {
+            this.mode = mode;
+            this.dropped = dropped;
+            this.inFlight = inFlight;
+            this.completed = completed;
+            this.interrupted = interrupted;
+            this.abandoned = abandoned;
+            this.duration = duration;
+        }
+    }
 
     public final MetricRegistry registry;
+    // service time: from the actual start of a task to its completion
     public final Timer queries;
+    // latency from the intended (scheduled) start time, not affected by coordinated omission
+    public final Timer responses;
     public final Timer generator;
+    // difference between actual and intended start time of tasks in nanoseconds
+    public final Histogram startLag;
+    // time tasks spent in the queue between the scheduler and loaders in nanoseconds
+    public final Histogram queueWait;
+    // how late the scheduled start time already is when a task is put to the queue, in nanoseconds
+    public final Histogram schedulerLag;
+    public final Gauge<Integer> queueDepth;
+    public final Gauge<Integer> activeLoaders;
+    // lossless recorders behind the timers and histograms above, also used to get statistics over short windows
+    public final LatencyHistogram generatorHistogram;
+    public final LatencyHistogram queriesHistogram;
+    public final LatencyHistogram responsesHistogram;
+    public final LatencyHistogram startLagHistogram;
+    public final LatencyHistogram queueWaitHistogram;
+    public final LatencyHistogram schedulerLagHistogram;
+    // all the recorders above and ones of task types by metric name
+    public final Map<String, LatencyHistogram> histograms;
     public final Meter success;
     public final Meter exceptions;
+    // tasks which ran longer than LoadOptions.taskTimeoutMs, counted neither as success nor as exceptions
+    public final Meter timeouts;
+    // tasks finished by loaders in any way, including timed out ones whose latency is not recorded
+    public final LongAdder completed = new LongAdder();
+    // tasks taken from the queue by loaders, taken - completed are in flight
+    public final LongAdder taken = new LongAdder();
     public final Gauge<Long> startDate;
     public final Gauge<Long> duration;
+    // rates set by the rate controller by milliseconds since start of the test
+    public final NavigableMap<Long, Double> targetRate = new ConcurrentSkipListMap<>();
+    // tasks generated before the start of the test and heap growth in bytes while they were generated
+    public final AtomicLong pregenerated = new AtomicLong();
+    public final AtomicLong pregenerationHeap = new AtomicLong();
 
     private final AtomicLong startTime = new AtomicLong(-1);
     private final AtomicLong startNanoTime = new AtomicLong(-1);
     private final AtomicLong endNanoTime = new AtomicLong(-1);
+    private volatile IntSupplier queueSize = () -> 0;
+    private volatile IntSupplier activeLoaderWorkers = () -> 0;
+    private final AtomicLong warmupNanoTime = new AtomicLong(-1);
+    private volatile Warmup warmup;
+    private volatile Stop stop;
+    private final int significantDigits;
+    private final Map<String, LatencyHistogram> recorders = new LinkedHashMap<>();
+    private final Map<String, LongAdder> counters = new LinkedHashMap<>();
+    private volatile Tag[] tags = new Tag[0];
 
     public Metrics() {
         this(new MetricRegistry());
     }
 
     public Metrics(MetricRegistry registry) {
+        this(registry, LatencyHistogram.DEFAULT_SIGNIFICANT_DIGITS);
+    }
+
+    public Metrics(MetricRegistry registry, int significantDigits) {
         this.registry = registry;
+        this.significantDigits = significantDigits;
 
-        generator = registry.timer(GENERATOR_METRIC_NAME);
-        queries = registry.timer(QUERIES_METRIC_NAME);
+        // engine metrics don't use the default reservoir: it keeps only ~1000 samples and allocates on every update
+        generatorHistogram = new LatencyHistogram(significantDigits);
+        queriesHistogram = new LatencyHistogram(significantDigits);
+        responsesHistogram = new LatencyHistogram(significantDigits);
+        startLagHistogram = new LatencyHistogram(significantDigits);
+        queueWaitHistogram = new LatencyHistogram(significantDigits);
+        schedulerLagHistogram = new LatencyHistogram(significantDigits);
+        recorders.put(GENERATOR_METRIC_NAME, generatorHistogram);
+        recorders.put(QUERIES_METRIC_NAME, queriesHistogram);
+        recorders.put(RESPONSES_METRIC_NAME, responsesHistogram);
+        recorders.put(START_LAG_METRIC_NAME, startLagHistogram);
+        recorders.put(QUEUE_WAIT_METRIC_NAME, queueWaitHistogram);
+        recorders.put(SCHEDULER_LAG_METRIC_NAME, schedulerLagHistogram);
+        this.histograms = Collections.unmodifiableMap(recorders);
+        generator = registry.timer(GENERATOR_METRIC_NAME, () -> new Timer(new HistogramReservoir(generatorHistogram)));
+        queries = registry.timer(QUERIES_METRIC_NAME, () -> new Timer(new HistogramReservoir(queriesHistogram)));
+        responses = registry.timer(RESPONSES_METRIC_NAME, () -> new Timer(new HistogramReservoir(responsesHistogram)));
+        startLag = registry.histogram(
+                START_LAG_METRIC_NAME,
+                () -> new Histogram(new HistogramReservoir(startLagHistogram))
+        );
+        queueWait = registry.histogram(
+                QUEUE_WAIT_METRIC_NAME,
+                () -> new Histogram(new HistogramReservoir(queueWaitHistogram))
+        );
+        schedulerLag = registry.histogram(
+                SCHEDULER_LAG_METRIC_NAME,
+                () -> new Histogram(new HistogramReservoir(schedulerLagHistogram))
+        );
+        queueDepth = () -> queueSize.getAsInt();
+        registry.register(QUEUE_DEPTH_METRIC_NAME, queueDepth);
+        activeLoaders = () -> activeLoaderWorkers.getAsInt();
+        registry.register(ACTIVE_LOADERS_METRIC_NAME, activeLoaders);
+        registry.register(PREGENERATED_METRIC_NAME, (Gauge<Long>) pregenerated::get);
+        registry.register(PREGENERATION_HEAP_METRIC_NAME, (Gauge<Long>) pregenerationHeap::get);
         success = registry.meter(SUCCESS_METRIC_NAME);
         exceptions = registry.meter(EXCEPTION_METRIC_NAME);
+        timeouts = registry.meter(TIMEOUTS_METRIC_NAME);
 
         this.startDate = startTime::get;
         registry.register(START_DATE_METRIC_NAME, this.startDate);
@@ -85,12 +286,180 @@ public class Metrics {
         registry.register(DURATION_METRIC_NAME, duration);
     }
 
+    public void setQueueSize(IntSupplier queueSize) {
+        this.queueSize = queueSize;
+    }
+
+    // adds recorders of task types, tag of a task is an index in `names`; must be called before the test starts
+    public synchronized void setTags(List<String> names) {
+        if (startNanoTime.get() >= 0 || hasWarmup()) {
+            throw new IllegalStateException("Tags can't be set after the test is started");
+        }
+        if (names.stream().distinct().count() != names.size()) {
+            throw new IllegalArgumentException("Tags must be unique");
+        }
+        for (Tag tag : tags) {
+            recorders.keySet().removeAll(tag.recorders().keySet());
+            counters.keySet().removeAll(tag.counters().keySet());
+        }
+        Tag[] created = new Tag[names.size()];
+        for (int i = 0; i < created.length; ++i) {
+            created[i] = new Tag(names.get(i), significantDigits);
+            recorders.putAll(created[i].recorders());
+            counters.putAll(created[i].counters());
+        }
+        tags = created;
+    }
+
+    public List<Tag> getTags() {
+        return Arrays.asList(tags);
+    }
+
+    // records a completed task of the type `tag`, tags out of range are ignored
+    public void recordTag(int tag, long serviceTime, long responseTime, boolean success) {
+        Tag[] current = tags;
+        if (tag < 0 || tag >= current.length) {
+            return;
+        }
+        Tag recorder = current[tag];
+        recorder.queries.update(serviceTime);
+        recorder.responses.update(responseTime);
+        if (success) {
+            recorder.success.increment();
+        } else {
+            recorder.exceptions.increment();
+        }
+    }
+
+    // records a timed out task, `serviceTime` and `responseTime` are given by TimeoutPolicy and negative
+    // when latency of timed out tasks is not recorded
+    public void recordTagTimeout(int tag, long serviceTime, long responseTime) {
+        Tag[] current = tags;
+        if (tag < 0 || tag >= current.length) {
+            return;
+        }
+        Tag recorder = current[tag];
+        recorder.timeouts.increment();
+        if (serviceTime >= 0) {
+            recorder.queries.update(serviceTime);
+            recorder.responses.update(responseTime);
+        }
+    }
+
+    public void setActiveLoaders(IntSupplier activeLoaders) {
+        this.activeLoaderWorkers = activeLoaders;
+    }
+
+    // nanoseconds the thread spent on a task / waiting for one (loaders) or blocked in the queue / running (schedulers)
+    public Counter threadTime(String thread, String suffix) {
+        return registry.counter(ENGINE_METRIC_PREFIX + thread + suffix);
+    }
+
+    // starts the test with warm-up instead of markStart
+    public void markWarmupStart() {
+        warmupNanoTime.set(System.nanoTime());
+    }
+
+    // ends warm-up and starts the measured window, returns false if there is no warm-up in progress
+    public synchronized boolean endWarmup() {
+        if (!isWarmingUp()) {
+            return false;
+        }
+        Map<String, LatencyHistogram.Snapshot> snapshots = new LinkedHashMap<>();
+        histograms.forEach((name, histogram) -> snapshots.put(name, histogram.getSnapshot()));
+        Map<String, Long> counts = new LinkedHashMap<>();
+        counters.forEach((name, counter) -> counts.put(name, counter.sum()));
+        markStart();
+        warmup = new Warmup(
+                (startNanoTime.get() - warmupNanoTime.get()) / 1000000,
+                snapshots,
+                success.getCount(),
+                exceptions.getCount(),
+                timeouts.getCount(),
+                counts
+        );
+        return true;
+    }
+
+    public boolean hasWarmup() {
+        return warmupNanoTime.get() >= 0;
+    }
+
+    public boolean isWarmingUp() {
+        return hasWarmup() && warmup == null;
+    }
+
+    // null when there was no warm-up or it is not ended yet
+    public Warmup getWarmup() {
+        return warmup;
+    }
+
+    // milliseconds of warm-up so far
+    public long warmupDuration() {
+        Warmup ended = warmup;
+        if (ended != null) {
+            return ended.duration;
+        }
+        long start = warmupNanoTime.get();
+        return start < 0 ? 0 : (System.nanoTime() - start) / 1000000;
+    }
+
+    // values of an engine recorder in the measured window, empty during warm-up
+    public LatencyHistogram.Snapshot measuredSnapshot(String name) {
+        LatencyHistogram.Snapshot snapshot = histograms.get(name).getSnapshot();
+        Warmup ended = warmup;
+        if (ended != null) {
+            return snapshot.minus(ended.histograms.get(name));
+        }
+        return hasWarmup() ? snapshot.minus(snapshot) : snapshot;
+    }
+
+    // value of a task type counter in the measured window, 0 during warm-up
+    public long measuredCount(String name) {
+        long count = counters.get(name).sum();
+        Warmup ended = warmup;
+        if (ended != null) {
+            return count - ended.counts.get(name);
+        }
+        return hasWarmup() ? 0 : count;
+    }
+
+    // count of success, exceptions or timeouts meter in the measured window
+    public long measuredCount(Metered meter) {
+        Warmup ended = warmup;
+        long warmupCount;
+        if (meter == success) {
+            warmupCount = ended != null ? ended.success : 0;
+        } else if (meter == exceptions) {
+            warmupCount = ended != null ? ended.exceptions : 0;
+        } else if (meter == timeouts) {
+            warmupCount = ended != null ? ended.timeouts : 0;
+        } else {
+            throw new IllegalArgumentException("Only success, exceptions and timeouts meters are measured");
+        }
+        if (ended == null && hasWarmup()) {
+            return 0;
+        }
+        return meter.getCount() - warmupCount;
+    }
+
+    // null when the test was not stopped
+    public Stop getStop() {
+        return stop;
+    }
+
+    public void markStop(Stop stop) {
+        this.stop = stop;
+    }
+
     public void markStart() {
         startTime.set(System.currentTimeMillis() / 1000);
         startNanoTime.set(System.nanoTime());
     }
 
     public void markEnd() {
+        // the test ended during warm-up, nothing is measured
+        endWarmup();
         endNanoTime.set(System.nanoTime());
     }
 }
@@ -0,0 +1,65 @@
+/*
+ * Copyright (c) 2015, IponWeb (http://www.iponweb.com)
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the <organization> nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package legion.record;
+
+import com.codahale.metrics.MetricRegistry;
+import legion.Generator;
+
+import java.util.Properties;
+
+// Passes tasks of another generator through, recording them to a task stream file
+public class RecordingGenerator<T> implements Generator<T> {
+    private final Generator<T> generator;
+    private final TaskRecorder<T> recorder;
+
+    public RecordingGenerator(Generator<T> generator, TaskRecorder<T> recorder) {
+        this.generator = generator;
+        this.recorder = recorder;
+        recorder.retain();
+    }
+
+    @Override
+    public void init(Properties props, MetricRegistry registry) {
+        generator.init(props, registry);
+    }
+
+    @Override
+    public T generate() throws Exception {
+        T task = generator.generate();
+        if (task != null) {
+            recorder.record(task);
+        }
+        return task;
+    }
+
+    @Override
+    public void close() {
+        generator.close();
+        recorder.release();
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright (c) 2015, IponWeb (http://www.iponweb.com)
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the <organization> nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package legion.record;
+
+import legion.Generator;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+// Replays a task stream file written by TaskRecorder. Records are decoded from slices of the mapped file,
+// nothing is copied unless the codec does it. With several shards (e.g. one per agent) every generator
+// takes each `shards`-th record starting from `shard`.
+public class ReplayGenerator<T> implements Generator<T> {
+    private final Path path;
+    private final TaskCodec<T> codec;
+    private final int shard;
+    private final int shards;
+    private final int regionSize;
+    private final FileChannel channel;
+    private final long size;
+    private MappedByteBuffer region;
+    private long regionStart;
+    private long index;
+
+    public ReplayGenerator(Path path, TaskCodec<T> codec) throws IOException {
+        this(path, codec, 0, 1);
+    }
+
+    public ReplayGenerator(Path path, TaskCodec<T> codec, int shard, int shards) throws IOException {
+        this(path, codec, shard, shards, TaskStreamFile.DEFAULT_REGION_SIZE);
+    }
+
+    ReplayGenerator(Path path, TaskCodec<T> codec, int shard, int shards, int regionSize) throws IOException {
+        if (shards < 1 || shard < 0 || shard >= shards) {
+            throw new IllegalArgumentException("Wrong shard " + shard + " of " + shards);
+        }
+        this.path = path;
+        this.codec = codec;
+        this.shard = shard;
+        this.shards = shards;
+        this.regionSize = regionSize;
+        this.channel = FileChannel.open(path, StandardOpenOption.READ);
+        this.size = channel.size();
+        this.region = map(0);
+    }
+
+    private MappedByteBuffer map(long start) throws IOException {
+        return channel.map(FileChannel.MapMode.READ_ONLY, start, Long.min(regionSize, size - start));
+    }
+
+    @Override
+    public T generate() throws Exception {
+        while (true) {
+            ByteBuffer record = next();
+            if (record == null) {
+                return null;
+            }
+            if (index++ % shards == shard) {
+                return codec.decode(record);
+            }
+        }
+    }
+
+    private ByteBuffer next() throws IOException {
+        while (true) {
+            if (region.remaining() >= Integer.BYTES) {
+                int length = region.getInt();
+                if (length != TaskStreamFile.SKIP_MARKER) {
+                    if (length < 0 || length > region.remaining()) {
+                        throw new IOException(path + ": broken record at " + (regionStart + region.position()));
+                    }
+                    ByteBuffer record = region.slice().limit(length);
+                    region.position(region.position() + length);
+                    return record;
+                }
+            }
+            if (regionStart + regionSize >= size) {
+                return null;
+            }
+            regionStart += regionSize;
+            region = map(regionStart);
+        }
+    }
+
+    @Override
+    public void close() {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright (c) 2015, IponWeb (http://www.iponweb.com)
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the <organization> nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package legion.record;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+// Serializes tasks into records of a task stream file and back
+public interface TaskCodec<T> {
+    byte[] encode(T task);
+
+    // `data` is a read-only slice of the mapped file holding exactly one record
+    T decode(ByteBuffer data);
+
+    // tasks are the records themselves, replay doesn't copy them
+    static TaskCodec<ByteBuffer> bytes() {
+        return new TaskCodec<ByteBuffer>() {
+            @Override
+            public byte[] encode(ByteBuffer task) {
+                byte[] data = new byte[task.remaining()];
+                task.duplicate().get(data);
+                return data;
+            }
+
+            @Override
+            public ByteBuffer decode(ByteBuffer data) {
+                return data;
+            }
+        };
+    }
+
+    static TaskCodec<String> utf8() {
+        return new TaskCodec<String>() {
+            @Override
+            public byte[] encode(String task) {
+                return task.getBytes(StandardCharsets.UTF_8);
+            }
+
+            @Override
+            public String decode(ByteBuffer data) {
+                return StandardCharsets.UTF_8.decode(data).toString();
+            }
+        };
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright (c) 2015, IponWeb (http://www.iponweb.com)
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the <organization> nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package legion.record;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+// Appends encoded tasks to a memory-mapped task stream file, shared by all generators recording a run.
+// The file is closed when the last RecordingGenerator using it is closed.
+public class TaskRecorder<T> implements Closeable {
+    private final Path path;
+    private final TaskCodec<T> codec;
+    private final int regionSize;
+    private final FileChannel channel;
+    private MappedByteBuffer region;
+    private long regionStart;
+    private long records;
+    private int users;
+    private boolean closed;
+
+    public TaskRecorder(Path path, TaskCodec<T> codec) throws IOException {
+        this(path, codec, TaskStreamFile.DEFAULT_REGION_SIZE);
+    }
+
+    TaskRecorder(Path path, TaskCodec<T> codec, int regionSize) throws IOException {
+        this.path = path;
+        this.codec = codec;
+        this.regionSize = regionSize;
+        this.channel = FileChannel.open(
+                path,
+                StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.READ,
+                StandardOpenOption.WRITE
+        );
+        this.region = channel.map(FileChannel.MapMode.READ_WRITE, 0, regionSize);
+    }
+
+    public synchronized void record(T task) throws IOException {
+        if (closed) {
+            throw new IOException(path + ": recorder is closed");
+        }
+        byte[] data = codec.encode(task);
+        if (data.length + Integer.BYTES > regionSize) {
+            throw new IllegalArgumentException("Task of " + data.length + " bytes is larger than region");
+        }
+        if (region.remaining() < data.length + Integer.BYTES) {
+            if (region.remaining() >= Integer.BYTES) {
+                region.putInt(TaskStreamFile.SKIP_MARKER);
+            }
+            regionStart += regionSize;
+            region = channel.map(FileChannel.MapMode.READ_WRITE, regionStart, regionSize);
+        }
+        region.putInt(data.length);
+        region.put(data);
+        records++;
+    }
+
+    public synchronized long getRecords() {
+        return records;
+    }
+
+    synchronized void retain() {
+        users++;
+    }
+
+    synchronized void release() {
+        if (--users == 0) {
+            try {
+                close();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        region.force();
+        // drop the unused tail of the last region
+        channel.truncate(regionStart + region.position());
+        channel.close();
+    }
+}
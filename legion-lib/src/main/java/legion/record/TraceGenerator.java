@@ -0,0 +1,110 @@
+/*
+ * Copyright (c) 2015, IponWeb (http://www.iponweb.com)
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the <organization> nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package legion.record;
+
+import legion.TimestampedGenerator;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.function.Function;
+import java.util.zip.GZIPInputStream;
+
+// Streams a text trace with lines `<timestamp in milliseconds> <task>`, optionally gzipped,
+// so traces don't have to fit on the heap. Offsets are counted from the first line.
+public class TraceGenerator<T> implements TimestampedGenerator<T> {
+    private final Path path;
+    private final Function<String, T> parser;
+    private final BufferedReader reader;
+    private long lineNumber;
+    private long first = -1;
+    private long offset;
+
+    public TraceGenerator(Path path, Function<String, T> parser) throws IOException {
+        this.path = path;
+        this.parser = parser;
+        InputStream in = Files.newInputStream(path);
+        if (path.toString().endsWith(".gz")) {
+            in = new GZIPInputStream(in);
+        }
+        this.reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+    }
+
+    @Override
+    public T generate() throws IOException {
+        String line;
+        do {
+            line = reader.readLine();
+            if (line == null) {
+                return null;
+            }
+            lineNumber++;
+        } while (line.isEmpty());
+        int separator = line.indexOf(' ');
+        long timestamp;
+        try {
+            timestamp = parseTimestamp(separator < 0 ? line : line.substring(0, separator));
+        } catch (NumberFormatException e) {
+            throw new IOException(path + ":" + lineNumber + ": wrong timestamp", e);
+        }
+        if (first < 0) {
+            first = timestamp;
+        }
+        offset = Long.max(timestamp - first, 0);
+        return parser.apply(separator < 0 ? "" : line.substring(separator + 1));
+    }
+
+    // milliseconds with optional fraction to nanoseconds
+    static long parseTimestamp(String timestamp) {
+        int point = timestamp.indexOf('.');
+        if (point < 0) {
+            return Long.parseLong(timestamp) * 1000000;
+        }
+        String fraction = (timestamp.substring(point + 1) + "000000").substring(0, 6);
+        return Long.parseLong(timestamp.substring(0, point)) * 1000000 + Long.parseLong(fraction);
+    }
+
+    @Override
+    public long offset() {
+        return offset;
+    }
+
+    @Override
+    public void close() {
+        try {
+            reader.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
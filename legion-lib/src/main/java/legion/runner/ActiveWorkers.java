@@ -0,0 +1,84 @@
+/*
+ * Copyright (c) 2015, IponWeb (http://www.iponweb.com)
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the <organization> nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package legion.runner;
+
+// Number of loader workers taking tasks, can be changed while the test is running. Workers beyond the limit
+// wait until it is raised or the test finishes, tasks are taken by the active ones meanwhile.
+public class ActiveWorkers {
+    private final int workers;
+    private volatile int active;
+    private volatile boolean finished;
+
+    public ActiveWorkers(int workers, int active) {
+        this.workers = workers;
+        this.active = active > 0 ? Integer.min(active, workers) : workers;
+    }
+
+    public int getWorkers() {
+        return workers;
+    }
+
+    public int getActive() {
+        return active;
+    }
+
+    // indexes from `workers` on are of async loader workers, which are always active
+    public boolean isActive(int index) {
+        return index >= workers || index < active;
+    }
+
+    public void checkActive(int active) {
+        if (active < 1 || active > workers) {
+            throw new IllegalArgumentException(String.format("Active workers must be from 1 to %s", workers));
+        }
+    }
+
+    public synchronized void setActive(int active) {
+        checkActive(active);
+        this.active = active;
+        notifyAll();
+    }
+
+    // lets waiting workers through to get the finalizer
+    public synchronized void finish() {
+        finished = true;
+        notifyAll();
+    }
+
+    // blocks while worker `index` is not active, returns whether it had to wait
+    public boolean await(int index) throws InterruptedException {
+        if (index < active || finished) {
+            return false;
+        }
+        synchronized (this) {
+            while (index >= active && !finished) {
+                wait();
+            }
+        }
+        return true;
+    }
+}
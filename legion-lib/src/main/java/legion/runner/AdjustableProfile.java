@@ -0,0 +1,84 @@
+/*
+ * Copyright (c) 2015, IponWeb (http://www.iponweb.com)
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the <organization> nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package legion.runner;
+
+// Constant rate which can be changed while the test is running. Readers only read a volatile reference
+// to an immutable segment, so scheduling stays lock-free. Earlier segments are kept, since slots of queued
+// tasks may belong to them.
+public class AdjustableProfile implements LoadProfile {
+    private static class Segment {
+        final long start;
+        final double startSlots;
+        final double rate;
+        // null for the first segment
+        final Segment previous;
+
+        Segment(long start, double startSlots, double rate, Segment previous) {
+            this.start = start;
+            this.startSlots = startSlots;
+            this.rate = rate;
+            this.previous = previous;
+        }
+    }
+
+    private volatile Segment segment;
+
+    public AdjustableProfile(double rate) {
+        checkRate(rate);
+        segment = new Segment(0, 0, rate, null);
+    }
+
+    static void checkRate(double rate) {
+        if (!(rate > 0) || Double.isInfinite(rate)) {
+            throw new IllegalArgumentException("Rate must be positive and finite");
+        }
+    }
+
+    @Override
+    public double rate(long elapsed) {
+        return segment.rate;
+    }
+
+    @Override
+    public long elapsedAt(double slots) {
+        Segment s = segment;
+        // backlogged slots keep the rate they were scheduled at, usually they are in one of the latest segments
+        while (slots < s.startSlots && s.previous != null) {
+            s = s.previous;
+        }
+        return s.start + (long) ((slots - s.startSlots) * 1e9 / s.rate);
+    }
+
+    // new rate applies to slots scheduled after `elapsed` nanoseconds since start
+    public synchronized void setRate(long elapsed, double rate) {
+        checkRate(rate);
+        Segment s = segment;
+        double slots = s.startSlots + Double.max(elapsed - s.start, 0) * s.rate / 1e9;
+        segment = new Segment(Long.max(elapsed, s.start), slots, rate, s);
+    }
+}
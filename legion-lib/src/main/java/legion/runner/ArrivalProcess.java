@@ -0,0 +1,66 @@
+/*
+ * Copyright (c) 2015, IponWeb (http://www.iponweb.com)
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the <organization> nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package legion.runner;
+
+// Maps slot index to its position in units of mean interval. Load profile turns position into time.
+public interface ArrivalProcess {
+    ArrivalProcess CONSTANT = slot -> slot;
+
+    double position(long slot);
+
+    // constant, poisson, uniform:JITTER or empirical:GAP,GAP,...
+    static ArrivalProcess parse(String spec, long seed) {
+        String[] parts = spec.trim().split(":", 2);
+        try {
+            switch (parts[0]) {
+                case "constant":
+                    return CONSTANT;
+                case "poisson":
+                    return new RandomArrivals(InterArrivalDistribution.exponential(), seed);
+                case "uniform":
+                    if (parts.length == 2) {
+                        return new RandomArrivals(InterArrivalDistribution.uniform(Double.parseDouble(parts[1])), seed);
+                    }
+                    break;
+                case "empirical":
+                    if (parts.length == 2) {
+                        String[] values = parts[1].split(",");
+                        double[] gaps = new double[values.length];
+                        for (int i = 0; i < values.length; ++i) {
+                            gaps[i] = Double.parseDouble(values[i]);
+                        }
+                        return new RandomArrivals(InterArrivalDistribution.empirical(gaps), seed);
+                    }
+                    break;
+            }
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Wrong arrival process: " + spec, e);
+        }
+        throw new IllegalArgumentException("Wrong arrival process: " + spec);
+    }
+}
@@ -0,0 +1,177 @@
+/*
+ * Copyright (c) 2015, IponWeb (http://www.iponweb.com)
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the <organization> nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package legion.runner;
+
+import com.codahale.metrics.Counter;
+import legion.AsyncLoader;
+import legion.ExceptionLog;
+import legion.Metrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+public class AsyncLoadWorker<Task> implements Runnable {
+    private static final Logger LOGGER = LoggerFactory.getLogger(AsyncLoadWorker.class);
+
+    private final TaskQueue<Task> queue;
+    private final AsyncLoader<Task> loader;
+    private final Semaphore inFlight;
+    private final Pacing pacing;
+    private final ScheduledTaskPool<Task> pool;
+    private final QpsScheduler scheduler;
+    private final Metrics metrics;
+    private final ExceptionLog exceptionLog;
+    // null when tasks have no timeout
+    private final TaskTimeouts timeouts;
+    private Counter busyTime;
+    private Counter idleTime;
+    // time the previous task was handed over to the loader, since then the thread is idle
+    private long freeSince;
+
+    public AsyncLoadWorker(
+            TaskQueue<Task> queue,
+            AsyncLoader<Task> loader,
+            Semaphore inFlight,
+            Pacing pacing,
+            ScheduledTaskPool<Task> pool,
+            QpsScheduler scheduler,
+            Metrics metrics,
+            ExceptionLog exceptionLog,
+            TaskTimeouts timeouts
+    ) {
+        this.queue = queue;
+        this.loader = loader;
+        this.inFlight = inFlight;
+        this.pacing = pacing;
+        this.pool = pool;
+        this.scheduler = scheduler;
+        this.metrics = metrics;
+        this.exceptionLog = exceptionLog;
+        this.timeouts = timeouts;
+    }
+
+    @Override
+    public void run() {
+        String name = Thread.currentThread().getName();
+        busyTime = metrics.threadTime(name, Metrics.BUSY_TIME_SUFFIX);
+        idleTime = metrics.threadTime(name, Metrics.IDLE_TIME_SUFFIX);
+        freeSince = System.nanoTime();
+        while (true) {
+            try {
+                ScheduledTask<Task> task = queue.take();
+                task.dequeueTime = System.nanoTime();
+                idleTime.inc(task.dequeueTime - freeSince);
+                if (ScheduledTask.isFinalizer(task)) {
+                    LOGGER.trace("Got finalizer - stop processing");
+                    ScheduledTask.addFinalizer(queue);
+                    break;
+                }
+                metrics.taken.increment();
+                try {
+                    inFlight.acquire();
+                } catch (InterruptedException e) {
+                    pool.release(task);
+                    throw e;
+                }
+                processTask(task);
+            } catch (InterruptedException e) {
+                // hard stop of the test
+                LOGGER.info("interrupted");
+                break;
+            }
+        }
+    }
+
+    // waiting for an in-flight permit is busy time, waiting for the start time is idle time
+    private void processTask(ScheduledTask<Task> task) throws InterruptedException {
+        // the task may be completed and reused by another thread once it is passed to the loader
+        long dequeueTime = task.dequeueTime;
+        task.startTime = scheduler.startTime(task);
+        long pacingTime = System.nanoTime();
+        try {
+            pacing.awaitStart(task.startTime);
+        } catch (InterruptedException e) {
+            // the request is not started, so a stop must not wait for it
+            pool.release(task);
+            inFlight.release();
+            throw e;
+        }
+
+        long startTime = System.nanoTime();
+        metrics.startLag.update(startTime - task.startTime);
+        metrics.queueWait.update(task.dequeueTime - task.enqueueTime);
+        CompletionStage<?> stage;
+        try {
+            stage = loader.run(task.task);
+            if (stage == null) {
+                throw new IllegalStateException("Async loader returned null instead of a completion stage");
+            }
+        } catch (Exception e) {
+            complete(task, startTime, e);
+            stage = null;
+        }
+        if (stage != null && timeouts != null) {
+            stage = timeouts.withTimeout(stage, startTime);
+        }
+        if (stage != null) {
+            stage.whenComplete((result, e) -> complete(task, startTime, e));
+        }
+        freeSince = System.nanoTime();
+        idleTime.inc(startTime - pacingTime);
+        busyTime.inc(freeSince - dequeueTime - (startTime - pacingTime));
+    }
+
+    private void complete(ScheduledTask<Task> task, long startTime, Throwable exception) {
+        long endTime = System.nanoTime();
+        metrics.completed.increment();
+        if (exception instanceof CompletionException && exception.getCause() != null) {
+            exception = exception.getCause();
+        }
+        if (timeouts != null && exception instanceof CancellationException) {
+            // the future is cancelled at the deadline
+            timeouts.record(metrics, task, startTime, endTime);
+        } else {
+            metrics.queries.update(endTime - startTime, TimeUnit.NANOSECONDS);
+            metrics.responses.update(endTime - task.startTime, TimeUnit.NANOSECONDS);
+            metrics.recordTag(task.tag, endTime - startTime, endTime - task.startTime, exception == null);
+            if (exception == null) {
+                metrics.success.mark();
+            } else {
+                exceptionLog.record(exception);
+                metrics.exceptions.mark();
+            }
+        }
+        pool.release(task);
+        inFlight.release();
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright (c) 2015, IponWeb (http://www.iponweb.com)
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the <organization> nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package legion.runner;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+
+public enum ExecutionMode {
+    PLATFORM_THREADS {
+        @Override
+        public Thread newThread(Runnable runnable, String name) {
+            return new Thread(runnable, name);
+        }
+
+        @Override
+        public boolean isSupported() {
+            return true;
+        }
+    },
+    VIRTUAL_THREADS {
+        @Override
+        public Thread newThread(Runnable runnable, String name) {
+            if (!isSupported()) {
+                throw new IllegalStateException("Virtual threads are not supported by this JVM");
+            }
+            try {
+                Object builder = VirtualThreads.OF_VIRTUAL.invoke(null);
+                builder = VirtualThreads.NAME.invoke(builder, name);
+                return (Thread) VirtualThreads.UNSTARTED.invoke(builder, runnable);
+            } catch (IllegalAccessException | InvocationTargetException e) {
+                throw new IllegalStateException("Can't create virtual thread", e);
+            }
+        }
+
+        @Override
+        public boolean isSupported() {
+            return VirtualThreads.OF_VIRTUAL != null;
+        }
+    };
+
+    public abstract Thread newThread(Runnable runnable, String name);
+
+    public abstract boolean isSupported();
+
+    // Virtual threads appeared in Java 21 while the library is built for Java 11, so they are looked up
+    // reflectively. On older runtimes VIRTUAL_THREADS is not supported: falling back to platform threads
+    // would start a platform thread per loader worker, which is what the mode is chosen to avoid.
+    private static class VirtualThreads {
+        private static final Method OF_VIRTUAL;
+        private static final Method NAME;
+        private static final Method UNSTARTED;
+
+        static {
+            Method ofVirtual = null;
+            Method name = null;
+            Method unstarted = null;
+            try {
+                Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+                ofVirtual = Thread.class.getMethod("ofVirtual");
+                name = builderClass.getMethod("name", String.class);
+                unstarted = builderClass.getMethod("unstarted", Runnable.class);
+                ofVirtual.invoke(null);
+            } catch (ReflectiveOperationException | RuntimeException e) {
+                ofVirtual = null;
+            }
+            OF_VIRTUAL = ofVirtual;
+            NAME = name;
+            UNSTARTED = unstarted;
+        }
+    }
+}
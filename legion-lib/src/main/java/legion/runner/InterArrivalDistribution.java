@@ -0,0 +1,65 @@
+/*
+ * Copyright (c) 2015, IponWeb (http://www.iponweb.com)
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the <organization> nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package legion.runner;
+
+import java.util.function.DoubleSupplier;
+
+// Distribution of gaps between arrivals, in units of mean interval.
+// Samples are normalized by RandomArrivals, so the distribution mean does not have to be exactly 1.
+// `uniform` supplies random doubles uniformly distributed in [0, 1).
+public interface InterArrivalDistribution {
+    double sample(DoubleSupplier uniform);
+
+    static InterArrivalDistribution exponential() {
+        return uniform -> -Math.log(1 - uniform.getAsDouble());
+    }
+
+    // gaps uniformly distributed in [1 - jitter, 1 + jitter]
+    static InterArrivalDistribution uniform(double jitter) {
+        if (jitter < 0 || jitter > 1) {
+            throw new IllegalArgumentException("Jitter must be in [0, 1]");
+        }
+        return uniform -> 1 + jitter * (2 * uniform.getAsDouble() - 1);
+    }
+
+    // gaps are picked from user supplied values with equal probability
+    static InterArrivalDistribution empirical(double[] gaps) {
+        double sum = 0;
+        for (double gap : gaps) {
+            if (gap < 0) {
+                throw new IllegalArgumentException("Gaps must not be negative");
+            }
+            sum += gap;
+        }
+        if (sum <= 0) {
+            throw new IllegalArgumentException("At least one gap must be positive");
+        }
+        double[] values = gaps.clone();
+        return uniform -> values[(int) (uniform.getAsDouble() * values.length)];
+    }
+}
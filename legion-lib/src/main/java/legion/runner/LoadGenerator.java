@@ -29,30 +29,42 @@ package legion.runner;
 
 import com.codahale.metrics.MetricRegistry;
 import com.google.common.collect.Lists;
+import legion.AsyncLoader;
+import legion.ExceptionLog;
 import legion.Generator;
+import legion.IntervalLog;
 import legion.Loader;
 import legion.Metrics;
+import legion.TaskClassifier;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 import java.util.Properties;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
-import java.util.function.BooleanSupplier;
 
 public class LoadGenerator<Task> {
     private static final Logger LOGGER = LoggerFactory.getLogger(LoadGenerator.class);
-    private static final BooleanSupplier UNLIMITED_QUERIES = () -> true;
+    private static final long STOP_POLL_MS = 100;
+    // time interrupted loaders have to exit before they are left behind
+    private static final long STOP_GRACE_MS = 1000;
 
     private final int maxDuration;
     private final int queriesLimit;
     private final int qpsLimit;
     private final int generatorThreadsLimit;
+    private final LoadOptions options;
+    private final ArrivalProcess arrivals;
     private final Metrics metrics;
+    private final IntervalLog intervals;
+    private final ExceptionLog exceptions;
     private MainThread mainThread;
+    private TaskClassifier<Task> classifier;
 
     public LoadGenerator(
             int maxDuration,
@@ -71,11 +83,45 @@ public class LoadGenerator<Task> {
             int generatorThreadsLimit,
             Metrics metrics
     ) {
+        this(maxDuration, queriesLimit, qpsLimit, generatorThreadsLimit, new LoadOptions(), metrics);
+    }
+
+    public LoadGenerator(
+            int maxDuration,
+            int queriesLimit,
+            int qpsLimit,
+            int generatorThreadsLimit,
+            LoadOptions options,
+            Metrics metrics
+    ) {
+        if (!options.executionMode.isSupported()) {
+            throw new IllegalStateException(options.executionMode + " execution mode is not supported by this JVM");
+        }
+        if (options.maxInFlight < 1) {
+            throw new IllegalArgumentException("Max in-flight requests must be positive");
+        }
+        // an endless generator would fill the heap before the test starts
+        if (options.pregenerate < 0 && queriesLimit <= 0) {
+            throw new IllegalArgumentException("Pre-generation of the whole stream requires a queries limit");
+        }
+        this.arrivals = ArrivalProcess.parse(options.arrivalProcess, options.arrivalSeed);
+        // without a rate every task starts as soon as it is generated, arrivals would be ignored
+        boolean rateLimited = options.slo != null || options.loadProfile != null || qpsLimit > 0;
+        if (arrivals != ArrivalProcess.CONSTANT && !rateLimited) {
+            throw new IllegalArgumentException("Arrival process " + options.arrivalProcess + " requires a QPS limit");
+        }
         this.maxDuration = maxDuration;
         this.queriesLimit = queriesLimit;
         this.qpsLimit = qpsLimit;
         this.generatorThreadsLimit = generatorThreadsLimit;
+        this.options = options;
         this.metrics = metrics;
+        this.intervals = new IntervalLog(options.intervalCapacity, metrics);
+        this.exceptions = new ExceptionLog(
+                options.exceptionSamplesPerInterval,
+                options.intervalMs > 0 ? options.intervalMs : 1000,
+                options.exceptionSampleCapacity
+        );
     }
 
     private static void waitForFinish(Iterable<? extends Thread> threads) {
@@ -100,15 +146,45 @@ public class LoadGenerator<Task> {
         return qpsLimit;
     }
 
+    public LoadOptions getOptions() {
+        return options;
+    }
+
     public Metrics getMetrics() {
         return metrics;
     }
 
+    public IntervalLog getIntervals() {
+        return intervals;
+    }
+
+    public ExceptionLog getExceptions() {
+        return exceptions;
+    }
+
+    // splits tasks into types with their own metrics, must be set before the test starts
+    public void setTaskClassifier(TaskClassifier<Task> classifier) {
+        if (mainThread != null) {
+            throw new IllegalStateException("Task classifier can't be changed after the test is started");
+        }
+        metrics.setTags(classifier == null ? Collections.emptyList() : classifier.tags());
+        this.classifier = classifier;
+    }
+
     public void start(Collection<? extends Generator<Task>> generators, Collection<? extends Loader<Task>> loaders, Properties props) {
+        start(generators, loaders, Collections.emptyList(), props);
+    }
+
+    public void start(
+            Collection<? extends Generator<Task>> generators,
+            Collection<? extends Loader<Task>> loaders,
+            Collection<? extends AsyncLoader<Task>> asyncLoaders,
+            Properties props
+    ) {
         if (mainThread != null) {
             throw new IllegalStateException("Load generator can't be executed twice");
         }
-        mainThread = new MainThread(generators, loaders, props);
+        mainThread = new MainThread(generators, loaders, asyncLoaders, props);
         mainThread.start();
     }
 
@@ -117,17 +193,64 @@ public class LoadGenerator<Task> {
     }
 
     public void join() throws InterruptedException {
-        if (!isRunning()) {
-            throw new IllegalStateException("LoadGenerator is not running");
+        // a short test may finish before join is called
+        if (mainThread == null) {
+            throw new IllegalStateException("LoadGenerator is not started");
         }
         mainThread.join();
     }
 
     public void interrupt() {
+        interrupt(options.stopMode, options.stopTimeoutMs);
+    }
+
+    // Stops scheduling; DRAIN lets loaders run queued tasks, ABORT drops them. When loaders don't finish
+    // within the timeout, the rest of the queue is dropped and loader threads are interrupted. Returns after
+    // the loaders finished or were left behind, so it takes at most timeout plus a grace period.
+    public void interrupt(StopMode mode, long timeoutMs) {
+        if (!isRunning()) {
+            throw new IllegalStateException("LoadGenerator is not running");
+        }
+        mainThread.stop(mode, timeoutMs);
+    }
+
+    // Changes QPS limit of the running test. Slots are counted continuously, so the new rate applies from
+    // the next scheduled task without a pause or a burst. Only a constant QPS limit can be changed.
+    public void setRate(double rate) {
+        adjust(rate, null);
+    }
+
+    // number of loader workers taking tasks, from 1 to the number of workers created at start
+    public void setActiveLoaders(int active) {
+        adjust(null, active);
+    }
+
+    // changes QPS limit and number of active loaders together, null values are left as they are; when either
+    // value is rejected nothing is changed
+    public void adjust(Double rate, Integer activeLoaders) {
         if (!isRunning()) {
             throw new IllegalStateException("LoadGenerator is not running");
         }
-        mainThread.interrupt();
+        if (rate != null) {
+            mainThread.checkRate(rate);
+        }
+        if (activeLoaders != null) {
+            if (mainThread.activeWorkers.getWorkers() == 0) {
+                throw new IllegalStateException("Only the number of synchronous loader workers can be changed");
+            }
+            mainThread.activeWorkers.checkActive(activeLoaders);
+        }
+        if (rate != null) {
+            mainThread.setRate(rate);
+        }
+        if (activeLoaders != null) {
+            mainThread.activeWorkers.setActive(activeLoaders);
+            mainThread.queue.setActiveWorkers(mainThread.activeWorkers::isActive);
+        }
+    }
+
+    public int getActiveLoaders() {
+        return mainThread == null ? 0 : mainThread.activeWorkers.getActive();
     }
 
     public void doTest(
@@ -139,48 +262,152 @@ public class LoadGenerator<Task> {
         this.join();
     }
 
+    public void doTest(
+            Collection<? extends Generator<Task>> generators,
+            Collection<? extends Loader<Task>> loaders,
+            Collection<? extends AsyncLoader<Task>> asyncLoaders,
+            Properties props
+    ) throws InterruptedException {
+        this.start(generators, loaders, asyncLoaders, props);
+        this.join();
+    }
+
     private class MainThread extends Thread {
         private final List<SchedulerThread<Task>> schedulers = new ArrayList<>();
-        private final List<LoadThread<Task>> loadThreads = new ArrayList<>();
-        private final BlockingQueue<ScheduledTask<Task>> queue = new ArrayBlockingQueue<>(10000);
+        private final List<Loader<Task>> initializedLoaders = new ArrayList<>();
+        private final List<AsyncLoader<Task>> initializedAsyncLoaders = new ArrayList<>();
+        private final Semaphore inFlight = new Semaphore(options.maxInFlight);
+        private final List<Thread> loadThreads = new ArrayList<>();
+        private final TaskQueue<Task> queue;
+        private final ScheduledTaskPool<Task> pool;
+        private final QpsScheduler scheduler;
+        // null when rate is not limited, follows a load profile or is chosen by RateController
+        private AdjustableProfile adjustableRate;
+        private final ActiveWorkers activeWorkers;
+        // null when tasks have no timeout
+        private final TaskTimeouts timeouts;
+        private Pregeneration pregeneration;
+        private Thread rateControllerThread;
+        private Thread warmupThread;
+        private final AtomicBoolean stopping = new AtomicBoolean();
+        // counted down when loaders finished all their tasks
+        private final CountDownLatch loadersFinished = new CountDownLatch(1);
+        // set when a stop gives up waiting for loaders
+        private volatile boolean abandoned;
 
         public MainThread(
                 Collection<? extends Generator<Task>> generators,
                 Collection<? extends Loader<Task>> loaders,
+                Collection<? extends AsyncLoader<Task>> asyncLoaders,
                 Properties props
         ) {
             props = (Properties) props.clone();
             props.setProperty("generatorThreads", Integer.toString(Integer.min(generatorThreadsLimit, generators.size())));
             props.setProperty("generators", Integer.toString(generators.size()));
             props.setProperty("loaders", Integer.toString(loaders.size()));
-            QpsScheduler scheduler = new QpsScheduler(qpsLimit);
-            BooleanSupplier canSchedule = UNLIMITED_QUERIES;
+            int loaderWorkers = options.loaderConcurrency > 0 ? options.loaderConcurrency : loaders.size();
+            activeWorkers = new ActiveWorkers(loaders.isEmpty() ? 0 : loaderWorkers, options.activeLoaders);
+            metrics.setActiveLoaders(activeWorkers::getActive);
+            props.setProperty("loaderWorkers", Integer.toString(loaderWorkers));
+            props.setProperty("asyncLoaders", Integer.toString(asyncLoaders.size()));
+            queue = options.queueType.create(options.queueCapacity, loaderWorkers + asyncLoaders.size());
+            metrics.setQueueSize(queue::size);
+            queue.setActiveWorkers(activeWorkers::isActive);
+            // enough objects for a full queue and every task being processed
+            pool = new ScheduledTaskPool<>(options.queueCapacity + loaderWorkers + options.maxInFlight);
+            LoadProfile profile;
+            AdjustableProfile adjustableProfile = null;
+            if (options.slo != null) {
+                adjustableProfile = new AdjustableProfile(options.slo.initialRate);
+                profile = adjustableProfile;
+            } else if (options.loadProfile != null) {
+                profile = LoadProfile.parse(options.loadProfile);
+            } else if (qpsLimit > 0) {
+                // constant rate can be changed while the test is running
+                adjustableRate = new AdjustableProfile(qpsLimit);
+                profile = adjustableRate;
+            } else {
+                profile = null;
+            }
+            scheduler = new QpsScheduler(
+                    profile,
+                    arrivals,
+                    options.traceSpeed
+            );
+            if (adjustableProfile != null) {
+                rateControllerThread = new Thread(
+                        new RateController(options.slo, adjustableProfile, scheduler, metrics),
+                        "RateController"
+                );
+                rateControllerThread.setDaemon(true);
+            }
+            QueriesLimit canSchedule = QueriesLimit.unlimited();
             if (queriesLimit > 0) {
                 canSchedule = new QueriesLimit(queriesLimit);
             }
 
+            timeouts = options.taskTimeoutMs > 0 ? new TaskTimeouts(options.taskTimeoutMs, options.timeoutPolicy) : null;
             int loaderIndex = 0;
             for (Loader<Task> l : loaders) {
                 Properties loaderProps = (Properties) props.clone();
                 loaderProps.setProperty("loaderIndex", Integer.toString(loaderIndex++));
                 l.init(loaderProps, metrics.registry);
-                LoadThread<Task> thread = new LoadThread<>(queue, l, metrics);
-                thread.setName("LoadThread-" + loaderIndex);
-                loadThreads.add(thread);
+                initializedLoaders.add(l);
+            }
+            for (int i = 0; i < loaderWorkers && !initializedLoaders.isEmpty(); ++i) {
+                Loader<Task> loader = initializedLoaders.get(i % initializedLoaders.size());
+                LoadWorker<Task> worker = new LoadWorker<>(
+                        queue.forWorker(i),
+                        loader,
+                        options.pacing,
+                        pool,
+                        scheduler,
+                        metrics,
+                        exceptions,
+                        timeouts,
+                        i,
+                        activeWorkers
+                );
+                loadThreads.add(options.executionMode.newThread(worker, "LoadThread-" + (i + 1)));
+            }
+            for (AsyncLoader<Task> l : asyncLoaders) {
+                Properties loaderProps = (Properties) props.clone();
+                loaderProps.setProperty("loaderIndex", Integer.toString(loaderIndex++));
+                l.init(loaderProps, metrics.registry);
+                initializedAsyncLoaders.add(l);
+                AsyncLoadWorker<Task> worker = new AsyncLoadWorker<>(
+                        queue.forWorker(loadThreads.size()),
+                        l,
+                        inFlight,
+                        options.pacing,
+                        pool,
+                        scheduler,
+                        metrics,
+                        exceptions,
+                        timeouts
+                );
+                loadThreads.add(options.executionMode.newThread(worker, "AsyncLoadThread-" + initializedAsyncLoaders.size()));
             }
 
             LoadThreadsFinalizer<Task> loadThreadsFinalizer = new LoadThreadsFinalizer<>(generators.size(), queue);
 
+            List<List<Generator<Task>>> generatorsByThreads = distGeneratorsByThreads(generators, generatorThreadsLimit);
+            if (options.pregenerate != 0) {
+                pregeneration = new Pregeneration(options.pregenerate, generatorsByThreads.size(), metrics);
+            }
             int generatorThreadIndex = 0;
             AtomicInteger generatorsCounter = new AtomicInteger();
-            for (List<Generator<Task>> g : distGeneratorsByThreads(generators, generatorThreadsLimit)) {
+            for (List<Generator<Task>> g : generatorsByThreads) {
                 Properties generatorProps = (Properties) props.clone();
                 generatorProps.setProperty("generatorThreadIndex", Integer.toString(generatorThreadIndex++));
                 SchedulerThread<Task> thread = new SchedulerThread<>(
                         queue,
+                        pool,
                         g,
                         scheduler,
+                        classifier,
                         canSchedule,
+                        pregeneration,
                         loadThreadsFinalizer,
                         generatorProps,
                         metrics,
@@ -209,10 +436,48 @@ public class LoadGenerator<Task> {
 
         @Override
         public void run() {
-            metrics.markStart();
-
             loadThreads.forEach(Thread::start);
             schedulers.forEach(Thread::start);
+            if (pregeneration != null) {
+                LOGGER.info("Pre-generating tasks");
+                try {
+                    pregeneration.awaitGenerated();
+                } catch (InterruptedException e) {
+                    LOGGER.trace("Interrupted during pre-generation");
+                }
+                LOGGER.info("{} tasks pre-generated", metrics.pregenerated.get());
+                scheduler.start();
+            }
+            if (options.warmupSeconds != 0) {
+                metrics.markWarmupStart();
+            } else {
+                metrics.markStart();
+            }
+            if (options.warmupSeconds > 0) {
+                warmupThread = new Thread(() -> {
+                    try {
+                        Thread.sleep(options.warmupSeconds * 1000L);
+                        metrics.endWarmup();
+                    } catch (InterruptedException e) {
+                        LOGGER.trace("Warm-up is interrupted");
+                    }
+                }, "Warmup");
+            } else if (options.warmupSeconds < 0) {
+                warmupThread = new Thread(
+                        new WarmupDetector(options.warmupIntervalMs, options.maxWarmupSeconds, metrics),
+                        "WarmupDetector"
+                );
+            }
+            if (warmupThread != null) {
+                warmupThread.setDaemon(true);
+                warmupThread.start();
+            }
+            if (pregeneration != null) {
+                pregeneration.start();
+            }
+            if (rateControllerThread != null) {
+                rateControllerThread.start();
+            }
 
             ScheduledExecutorService executorService = null;
             if (maxDuration > 0) {
@@ -224,28 +489,165 @@ public class LoadGenerator<Task> {
                 );
                 executorService.shutdown();
             }
+            long startTime = System.nanoTime();
+            ScheduledExecutorService intervalsService = null;
+            if (options.intervalMs > 0) {
+                intervals.cut(0);
+                intervalsService = new ScheduledThreadPoolExecutor(1);
+                intervalsService.scheduleAtFixedRate(
+                        () -> intervals.cut((System.nanoTime() - startTime) / 1000000),
+                        options.intervalMs,
+                        options.intervalMs,
+                        TimeUnit.MILLISECONDS
+                );
+            }
 
             waitForFinish(schedulers);
             LOGGER.trace("All scheduler exited");
-            waitForFinish(loadThreads);
-            LOGGER.trace("All loader exited");
+            awaitLoaders();
+            loadersFinished.countDown();
+            initializedLoaders.forEach(Loader::close);
+            initializedAsyncLoaders.forEach(AsyncLoader::close);
+            if (timeouts != null) {
+                timeouts.close();
+            }
 
             if (executorService != null) {
                 executorService.shutdownNow();
             }
+            if (rateControllerThread != null) {
+                rateControllerThread.interrupt();
+            }
+            if (warmupThread != null) {
+                warmupThread.interrupt();
+            }
+            if (intervalsService != null) {
+                intervalsService.shutdownNow();
+                // the last interval is shorter than the others
+                intervals.cut((System.nanoTime() - startTime) / 1000000);
+            }
 
             metrics.markEnd();
         }
 
+        private void awaitLoaders() {
+            for (Thread thread : loadThreads) {
+                while (thread.isAlive() && !abandoned) {
+                    try {
+                        thread.join(STOP_POLL_MS);
+                    } catch (InterruptedException e) {
+                        // ignore
+                    }
+                }
+            }
+            LOGGER.trace("All loader exited");
+            while (!abandoned) {
+                try {
+                    if (inFlight.tryAcquire(options.maxInFlight, STOP_POLL_MS, TimeUnit.MILLISECONDS)) {
+                        LOGGER.trace("All async requests completed");
+                        break;
+                    }
+                } catch (InterruptedException e) {
+                    // ignore
+                }
+            }
+        }
+
+        void checkRate(double rate) {
+            if (adjustableRate == null) {
+                throw new IllegalStateException("Only a constant QPS limit can be changed");
+            }
+            AdjustableProfile.checkRate(rate);
+        }
+
+        void setRate(double rate) {
+            checkRate(rate);
+            long elapsed = scheduler.elapsed();
+            double previous = adjustableRate.rate(elapsed);
+            adjustableRate.setRate(elapsed, rate);
+            LOGGER.info("Change rate from {} to {}", previous, rate);
+            metrics.targetRate.putIfAbsent(0L, previous);
+            metrics.targetRate.put(elapsed / 1000000, rate);
+        }
+
+        private long completedTasks() {
+            return metrics.completed.sum();
+        }
+
         @Override
         public void interrupt() {
+            stop(options.stopMode, options.stopTimeoutMs);
+        }
+
+        void stop(StopMode mode, long timeoutMs) {
+            if (!stopping.compareAndSet(false, true)) {
+                return;
+            }
+            long stopTime = System.nanoTime();
+            // nothing new is scheduled, so windows of the drain would only report the queue running out
+            if (rateControllerThread != null) {
+                rateControllerThread.interrupt();
+            }
+            long completedBefore = completedTasks();
+            // completed is read first, so a task completed in between is not counted twice
+            long inFlightTasks = metrics.taken.sum() - completedBefore;
             LOGGER.trace("About to interrupt schedulers");
             schedulers.forEach(Thread::interrupt);
             LOGGER.trace("Waiting schedulers to exit");
-            waitForFinish(schedulers);
-            LOGGER.trace("All schedulers exited - clear queue");
-            queue.clear();
-            ScheduledTask.addFinalizer(queue);
+            long deadline = stopTime + TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+            long dropped = 0;
+            // a scheduler blocked on the full queue can't exit until loaders take tasks, it puts the finalizer
+            // ignoring interrupts
+            for (Thread scheduler : schedulers) {
+                while (scheduler.isAlive()) {
+                    if (mode == StopMode.ABORT || System.nanoTime() > deadline) {
+                        dropped += queue.clear();
+                    }
+                    try {
+                        scheduler.join(STOP_POLL_MS);
+                    } catch (InterruptedException e) {
+                        // ignore
+                    }
+                }
+            }
+            if (mode == StopMode.ABORT) {
+                LOGGER.trace("All schedulers exited - clear queue");
+                dropped += queue.clear();
+                ScheduledTask.addFinalizer(queue);
+            }
+            int interrupted = 0;
+            int left = 0;
+            try {
+                long remaining = deadline - System.nanoTime();
+                if (!loadersFinished.await(Long.max(remaining, 0), TimeUnit.NANOSECONDS)) {
+                    LOGGER.info("Loaders didn't finish in {}ms, interrupt them", timeoutMs);
+                    dropped += queue.clear();
+                    ScheduledTask.addFinalizer(queue);
+                    for (Thread thread : loadThreads) {
+                        if (thread.isAlive()) {
+                            thread.interrupt();
+                            interrupted++;
+                        }
+                    }
+                    if (!loadersFinished.await(STOP_GRACE_MS, TimeUnit.MILLISECONDS)) {
+                        left = (int) loadThreads.stream().filter(Thread::isAlive).count();
+                        LOGGER.warn("{} loader threads and {} async requests are left behind",
+                                left, options.maxInFlight - inFlight.availablePermits());
+                        abandoned = true;
+                    }
+                }
+            } catch (InterruptedException e) {
+                LOGGER.trace("Interrupted while stopping");
+            }
+            metrics.markStop(new Metrics.Stop(
+                    mode.name(),
+                    dropped,
+                    inFlightTasks,
+                    completedTasks() - completedBefore,
+                    interrupted,
+                    left,
+                    (System.nanoTime() - stopTime) / 1000000
+            ));
         }
     }
 }
@@ -0,0 +1,79 @@
+/*
+ * Copyright (c) 2015, IponWeb (http://www.iponweb.com)
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the <organization> nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package legion.runner;
+
+import legion.LatencyHistogram;
+
+public class LoadOptions {
+    public QueueType queueType = QueueType.BLOCKING;
+    public int queueCapacity = 10000;
+    public ExecutionMode executionMode = ExecutionMode.PLATFORM_THREADS;
+    // number of concurrently running loader workers, loaders are shared between workers round-robin, so they
+    // must be thread-safe when there are more workers than loaders; non-positive value means one worker per loader
+    public int loaderConcurrency = -1;
+    // number of loader workers taking tasks at start, can be raised up to the number of workers while the test
+    // is running; non-positive value means all workers
+    public int activeLoaders = -1;
+    // limit of requests started by async loaders and not completed yet
+    public int maxInFlight = 1000;
+    public Pacing pacing = Pacing.SLEEP;
+    // see LoadProfile.parse for format; overrides QPS limit when set
+    public String loadProfile;
+    // see ArrivalProcess.parse for format
+    public String arrivalProcess = "constant";
+    public long arrivalSeed = 0;
+    // when set, rate is chosen by RateController and load profile and QPS limit are ignored
+    public SloTarget slo;
+    // precision of engine latency histograms, used by the tool to create Metrics
+    public int histogramDigits = LatencyHistogram.DEFAULT_SIGNIFICANT_DIGITS;
+    // length of intervals latency histograms are cut into and number of the latest intervals kept;
+    // non-positive length disables intervals
+    public int intervalMs = 1000;
+    public int intervalCapacity = 3600;
+    // exceptions of loaders are counted by kind, only a few of them per interval (1s when intervals are disabled)
+    // are logged and kept with stack traces, the latest exceptionSampleCapacity of them
+    public int exceptionSamplesPerInterval = 5;
+    public int exceptionSampleCapacity = 20;
+    // number of tasks generated before the test starts and scheduled afterwards, the whole stream when negative
+    // (requires a queries limit); 0 disables pre-generation
+    public int pregenerate = 0;
+    // speed up (> 1) or slow down (< 1) of traces replayed by timestamped generators
+    public double traceSpeed = 1;
+    // warm-up excluded from reported metrics: fixed length when positive, ends when throughput and latency
+    // are stable (checked every warmupIntervalMs, at most maxWarmupSeconds) when negative, no warm-up when 0
+    public int warmupSeconds = 0;
+    public int warmupIntervalMs = 1000;
+    public int maxWarmupSeconds = 60;
+    // how the test is stopped by duration limit or interrupt() without arguments, see LoadGenerator.interrupt
+    public StopMode stopMode = StopMode.ABORT;
+    public long stopTimeoutMs = 10000;
+    // tasks running longer are interrupted (blocking loaders) or cancelled (async loaders) and counted as
+    // timeouts, non-positive value disables the timeout; the policy tells how their latency is recorded
+    public long taskTimeoutMs = 0;
+    public TimeoutPolicy timeoutPolicy = TimeoutPolicy.CAP;
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright (c) 2015, IponWeb (http://www.iponweb.com)
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the <organization> nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package legion.runner;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Target rate as a function of time since start of the test. Profiles are immutable, so scheduler threads
+// can compute start time of any slot without locking.
+public interface LoadProfile {
+    // target rate (queries per second) at `elapsed` nanoseconds after start
+    double rate(long elapsed);
+
+    // nanoseconds after start at which `slots` queries are scheduled (inverse of the rate integral)
+    long elapsedAt(double slots);
+
+    static LoadProfile constant(double rate) {
+        return new ConstantProfile(rate);
+    }
+
+    static LoadProfile ramp(double from, double to, double seconds) {
+        return new PiecewiseLinearProfile(new double[]{0, seconds}, new double[]{from, to});
+    }
+
+    static LoadProfile step(double start, double step, double everySeconds, double max) {
+        if (step <= 0 || everySeconds <= 0) {
+            throw new IllegalArgumentException("Step and step duration must be positive");
+        }
+        List<Double> times = new ArrayList<>();
+        List<Double> rates = new ArrayList<>();
+        double rate = start;
+        double time = 0;
+        while (rate < max) {
+            times.add(time);
+            rates.add(rate);
+            time += everySeconds;
+            times.add(time);
+            rates.add(rate);
+            rate += step;
+        }
+        times.add(time);
+        rates.add(max);
+        return new PiecewiseLinearProfile(
+                times.stream().mapToDouble(Double::doubleValue).toArray(),
+                rates.stream().mapToDouble(Double::doubleValue).toArray()
+        );
+    }
+
+    static LoadProfile spike(double base, double peak, double atSeconds, double durationSeconds) {
+        double end = atSeconds + durationSeconds;
+        return new PiecewiseLinearProfile(
+                new double[]{0, atSeconds, atSeconds, end, end},
+                new double[]{base, base, peak, peak, base}
+        );
+    }
+
+    static LoadProfile sine(double mean, double amplitude, double periodSeconds) {
+        return new SineProfile(mean, amplitude, periodSeconds);
+    }
+
+    // const:RATE, ramp:FROM:TO:SECONDS, step:START:STEP:EVERY_SECONDS:MAX, spike:BASE:PEAK:AT_SECONDS:SECONDS
+    // or sine:MEAN:AMPLITUDE:PERIOD_SECONDS
+    static LoadProfile parse(String spec) {
+        String[] parts = spec.trim().split(":");
+        double[] args = new double[parts.length - 1];
+        try {
+            for (int i = 1; i < parts.length; ++i) {
+                args[i - 1] = Double.parseDouble(parts[i]);
+            }
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Wrong load profile: " + spec, e);
+        }
+        switch (parts[0]) {
+            case "const":
+                checkArgs(spec, args, 1);
+                return constant(args[0]);
+            case "ramp":
+                checkArgs(spec, args, 3);
+                return ramp(args[0], args[1], args[2]);
+            case "step":
+                checkArgs(spec, args, 4);
+                return step(args[0], args[1], args[2], args[3]);
+            case "spike":
+                checkArgs(spec, args, 4);
+                return spike(args[0], args[1], args[2], args[3]);
+            case "sine":
+                checkArgs(spec, args, 3);
+                return sine(args[0], args[1], args[2]);
+            default:
+                throw new IllegalArgumentException("Unknown load profile: " + spec);
+        }
+    }
+
+    private static void checkArgs(String spec, double[] args, int expected) {
+        if (args.length != expected) {
+            throw new IllegalArgumentException(
+                    String.format("Load profile `%s` expects %s arguments", spec, expected)
+            );
+        }
+    }
+}
@@ -30,16 +30,15 @@ package legion.runner;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.atomic.AtomicInteger;
 
 public class LoadThreadsFinalizer<Task> implements Runnable {
     private static final Logger LOGGER = LoggerFactory.getLogger(LoadThreadsFinalizer.class);
 
     private final AtomicInteger schedulers = new AtomicInteger();
-    private final BlockingQueue<ScheduledTask<Task>> queue;
+    private final TaskQueue<Task> queue;
 
-    public LoadThreadsFinalizer(int schedulers, BlockingQueue<ScheduledTask<Task>> queue) {
+    public LoadThreadsFinalizer(int schedulers, TaskQueue<Task> queue) {
         this.queue = queue;
         this.schedulers.set(schedulers);
     }
@@ -0,0 +1,162 @@
+/*
+ * Copyright (c) 2015, IponWeb (http://www.iponweb.com)
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the <organization> nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package legion.runner;
+
+import com.codahale.metrics.Counter;
+import legion.Loader;
+import legion.ExceptionLog;
+import legion.Metrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.TimeUnit;
+
+public class LoadWorker<Task> implements Runnable {
+    private static final Logger LOGGER = LoggerFactory.getLogger(LoadWorker.class);
+
+    private final TaskQueue<Task> queue;
+    private final Loader<Task> loader;
+    private final Pacing pacing;
+    private final ScheduledTaskPool<Task> pool;
+    private final QpsScheduler scheduler;
+    private final Metrics metrics;
+    private final ExceptionLog exceptionLog;
+    // null when tasks have no timeout
+    private final TaskTimeouts timeouts;
+    private TaskTimeouts.Slot timeoutSlot;
+    private final int index;
+    private final ActiveWorkers activeWorkers;
+    private Counter busyTime;
+    private Counter idleTime;
+    // end of the previous task, time since it is idle
+    private long freeSince;
+
+    public LoadWorker(
+            TaskQueue<Task> queue,
+            Loader<Task> loader,
+            Pacing pacing,
+            ScheduledTaskPool<Task> pool,
+            QpsScheduler scheduler,
+            Metrics metrics,
+            ExceptionLog exceptionLog,
+            TaskTimeouts timeouts,
+            int index,
+            ActiveWorkers activeWorkers
+    ) {
+        this.queue = queue;
+        this.loader = loader;
+        this.pacing = pacing;
+        this.pool = pool;
+        this.scheduler = scheduler;
+        this.metrics = metrics;
+        this.exceptionLog = exceptionLog;
+        this.timeouts = timeouts;
+        this.index = index;
+        this.activeWorkers = activeWorkers;
+    }
+
+    @Override
+    public void run() {
+        String name = Thread.currentThread().getName();
+        busyTime = metrics.threadTime(name, Metrics.BUSY_TIME_SUFFIX);
+        idleTime = metrics.threadTime(name, Metrics.IDLE_TIME_SUFFIX);
+        freeSince = System.nanoTime();
+        if (timeouts != null) {
+            timeoutSlot = timeouts.register();
+        }
+        while (true) {
+            try {
+                if (activeWorkers.await(index)) {
+                    // time out of the active workers is not idle time
+                    freeSince = System.nanoTime();
+                }
+                ScheduledTask<Task> task = queue.take();
+                task.dequeueTime = System.nanoTime();
+                if (ScheduledTask.isFinalizer(task)) {
+                    LOGGER.trace("Got finalizer - stop processing");
+                    activeWorkers.finish();
+                    ScheduledTask.addFinalizer(queue);
+                    break;
+                }
+                metrics.taken.increment();
+                processTask(task);
+                pool.release(task);
+            } catch (InterruptedException e) {
+                // hard stop of the test
+                LOGGER.info("interrupted");
+                break;
+            }
+        }
+        if (timeoutSlot != null) {
+            timeouts.unregister(timeoutSlot);
+        }
+    }
+
+    private void processTask(ScheduledTask<Task> task) throws InterruptedException {
+        task.startTime = scheduler.startTime(task);
+        pacing.awaitStart(task.startTime);
+        long startTime = System.nanoTime();
+        idleTime.inc(startTime - freeSince);
+        metrics.startLag.update(startTime - task.startTime);
+        metrics.queueWait.update(task.dequeueTime - task.enqueueTime);
+
+        if (timeoutSlot != null) {
+            timeoutSlot.start(startTime);
+        }
+        Exception failure = null;
+        try {
+            loader.run(task.task);
+        } catch (Exception e) {
+            failure = e;
+        }
+        long endTime = System.nanoTime();
+        busyTime.inc(endTime - startTime);
+        freeSince = endTime;
+        if (timeoutSlot != null && timeoutSlot.finish()) {
+            // loader is interrupted by the watchdog, whatever it threw
+            metrics.completed.increment();
+            timeouts.record(metrics, task, startTime, endTime);
+            return;
+        }
+        if (failure instanceof InterruptedException) {
+            throw (InterruptedException) failure;
+        }
+        metrics.completed.increment();
+        boolean success = failure == null;
+        if (!success) {
+            exceptionLog.record(failure);
+            metrics.exceptions.mark();
+        }
+        metrics.queries.update(endTime - startTime, TimeUnit.NANOSECONDS);
+        metrics.responses.update(endTime - task.startTime, TimeUnit.NANOSECONDS);
+        metrics.recordTag(task.tag, endTime - startTime, endTime - task.startTime, success);
+        if (success) {
+            metrics.success.mark();
+        }
+    }
+}
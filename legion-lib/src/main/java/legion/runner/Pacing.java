@@ -0,0 +1,65 @@
+/*
+ * Copyright (c) 2015, IponWeb (http://www.iponweb.com)
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the <organization> nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package legion.runner;
+
+import java.util.concurrent.locks.LockSupport;
+
+public enum Pacing {
+    // sleeps with millisecond granularity rounded up, task may start up to 1ms after its start time
+    SLEEP {
+        @Override
+        public void awaitStart(long startTime) throws InterruptedException {
+            long remaining = startTime - System.nanoTime();
+            while (remaining > 0) {
+                Thread.sleep((remaining + 999999) / 1000000);
+                remaining = startTime - System.nanoTime();
+            }
+        }
+    },
+    // parks until SPIN_NANOS before start time and spins the rest, costs up to SPIN_NANOS of CPU per task
+    PRECISE {
+        @Override
+        public void awaitStart(long startTime) throws InterruptedException {
+            long remaining = startTime - System.nanoTime();
+            while (remaining > SPIN_NANOS) {
+                LockSupport.parkNanos(remaining - SPIN_NANOS);
+                if (Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
+                remaining = startTime - System.nanoTime();
+            }
+            while (startTime - System.nanoTime() > 0) {
+                Thread.onSpinWait();
+            }
+        }
+    };
+
+    private static final long SPIN_NANOS = 100000;
+
+    public abstract void awaitStart(long startTime) throws InterruptedException;
+}
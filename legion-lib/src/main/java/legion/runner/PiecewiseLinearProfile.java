@@ -0,0 +1,95 @@
+/*
+ * Copyright (c) 2015, IponWeb (http://www.iponweb.com)
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the <organization> nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package legion.runner;
+
+import java.util.Arrays;
+
+// Rate is linearly interpolated between points and stays constant after the last point.
+// Points with equal time make a step.
+public class PiecewiseLinearProfile implements LoadProfile {
+    private final double[] times;
+    private final double[] rates;
+    private final double[] counts;
+
+    public PiecewiseLinearProfile(double[] times, double[] rates) {
+        if (times.length == 0 || times.length != rates.length || times[0] != 0) {
+            throw new IllegalArgumentException("Profile must have rate for every point and start at 0");
+        }
+        if (rates[rates.length - 1] <= 0) {
+            throw new IllegalArgumentException("Rate at the end of profile must be positive");
+        }
+        this.times = times.clone();
+        this.rates = rates.clone();
+        this.counts = new double[times.length];
+        for (int i = 1; i < times.length; ++i) {
+            if (times[i] < times[i - 1] || rates[i] < 0) {
+                throw new IllegalArgumentException("Profile times must not decrease and rates must not be negative");
+            }
+            counts[i] = counts[i - 1] + (rates[i - 1] + rates[i]) * (times[i] - times[i - 1]) / 2;
+        }
+    }
+
+    private static int lastNotGreater(double[] values, double value) {
+        int index = Arrays.binarySearch(values, value);
+        if (index < 0) {
+            return -index - 2;
+        }
+        while (index + 1 < values.length && values[index + 1] == value) {
+            index++;
+        }
+        return index;
+    }
+
+    @Override
+    public double rate(long elapsed) {
+        double time = elapsed / 1e9;
+        int i = Integer.max(lastNotGreater(times, time), 0);
+        if (i == times.length - 1) {
+            return rates[i];
+        }
+        double fraction = (time - times[i]) / (times[i + 1] - times[i]);
+        return rates[i] + (rates[i + 1] - rates[i]) * fraction;
+    }
+
+    @Override
+    public long elapsedAt(double slots) {
+        int i = Integer.max(lastNotGreater(counts, slots), 0);
+        double remaining = slots - counts[i];
+        double time;
+        if (i == times.length - 1) {
+            time = times[i] + remaining / rates[i];
+        } else {
+            // solve rate * t + slope * t^2 / 2 = remaining in a numerically stable form
+            double slope = (rates[i + 1] - rates[i]) / (times[i + 1] - times[i]);
+            double discriminant = Double.max(rates[i] * rates[i] + 2 * slope * remaining, 0);
+            double denominator = rates[i] + Math.sqrt(discriminant);
+            time = times[i] + (denominator > 0 ? 2 * remaining / denominator : 0);
+        }
+        return (long) (time * 1e9);
+    }
+}
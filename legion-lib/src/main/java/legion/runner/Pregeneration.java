@@ -0,0 +1,80 @@
+/*
+ * Copyright (c) 2015, IponWeb (http://www.iponweb.com)
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the <organization> nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package legion.runner;
+
+import legion.Metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.CountDownLatch;
+
+// Scheduler threads generate tasks before the test starts, so expensive generators don't compete with loaders
+// for CPU while latency is measured. Stored tasks are scheduled after all threads are done and the clock starts.
+public class Pregeneration {
+    // shared by all scheduler threads
+    final QueriesLimit limit;
+    private final CountDownLatch generated;
+    private final CountDownLatch started = new CountDownLatch(1);
+    private final Metrics metrics;
+    private final long heapBefore;
+
+    // non-positive number of tasks means the whole stream of generators
+    public Pregeneration(int tasks, int threads, Metrics metrics) {
+        this.limit = tasks > 0 ? new QueriesLimit(tasks) : QueriesLimit.unlimited();
+        this.generated = new CountDownLatch(threads);
+        this.metrics = metrics;
+        this.heapBefore = heapUsed();
+    }
+
+    private static long heapUsed() {
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+
+    void generated(int tasks) {
+        metrics.pregenerated.addAndGet(tasks);
+    }
+
+    // called once by every scheduler thread, also when it fails or is interrupted
+    void done() {
+        generated.countDown();
+    }
+
+    void awaitStart() throws InterruptedException {
+        started.await();
+    }
+
+    public void awaitGenerated() throws InterruptedException {
+        generated.await();
+        // an estimate of memory taken by stored tasks: it includes garbage of generators, and a GC during
+        // pre-generation may make it smaller than the real footprint
+        metrics.pregenerationHeap.set(Long.max(heapUsed() - heapBefore, 0));
+    }
+
+    public void start() {
+        started.countDown();
+    }
+}
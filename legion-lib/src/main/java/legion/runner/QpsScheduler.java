@@ -27,22 +27,79 @@
 
 package legion.runner;
 
+import java.util.concurrent.atomic.AtomicLong;
+
 public class QpsScheduler {
-    double interval = 0;
-    int counter = -1;
-    long startTime = System.nanoTime();
+    private final AtomicLong counter = new AtomicLong();
+    // null when QPS is not limited
+    private final LoadProfile profile;
+    private final ArrivalProcess arrivals;
+    private final double traceSpeed;
+    private volatile long startTime = System.nanoTime();
 
     public QpsScheduler(int qpsLimit) {
-        if (qpsLimit > 0) {
-            interval = ((double) (1000000000)) / qpsLimit;
+        this(qpsLimit > 0 ? LoadProfile.constant(qpsLimit) : null);
+    }
+
+    public QpsScheduler(LoadProfile profile) {
+        this(profile, ArrivalProcess.CONSTANT);
+    }
+
+    public QpsScheduler(LoadProfile profile, ArrivalProcess arrivals) {
+        this(profile, arrivals, 1);
+    }
+
+    public QpsScheduler(LoadProfile profile, ArrivalProcess arrivals, double traceSpeed) {
+        if (!(traceSpeed > 0)) {
+            throw new IllegalArgumentException("Trace speed must be positive");
         }
+        this.profile = profile;
+        this.arrivals = arrivals;
+        this.traceSpeed = traceSpeed;
+    }
+
+    // slots are counted from this moment, called when the test starts after pre-generation
+    public void start() {
+        startTime = System.nanoTime();
     }
 
     public long next() {
-        synchronized (this) {
-            counter++;
-            return startTime + (long) (interval * counter);
+        if (profile == null) {
+            // without QPS limit task is intended to start right after it was generated
+            return System.nanoTime();
         }
+        return slotTime(counter.getAndIncrement());
+    }
+
+    // reserves `slots` consecutive slots with a single atomic operation and returns index of the first one
+    public long reserve(int slots) {
+        return counter.getAndAdd(slots);
     }
 
+    // nanoseconds since the scheduler was created
+    public long elapsed() {
+        return System.nanoTime() - startTime;
+    }
+
+    // start time of a task of a timestamped generator, `offset` is nanoseconds since start of the trace
+    public long traceTime(long offset) {
+        return startTime + (long) (offset / traceSpeed);
+    }
+
+    // rate of an adjustable profile may change after the task was queued, then slots get new start times
+    public boolean isAdjustable() {
+        return profile instanceof AdjustableProfile;
+    }
+
+    // start time of a queued task according to the rate of the segment its slot belongs to
+    public long startTime(ScheduledTask<?> task) {
+        return task.slot >= 0 ? slotTime(task.slot) : task.startTime;
+    }
+
+    public long slotTime(long slot) {
+        if (profile == null) {
+            return System.nanoTime();
+        }
+        return startTime + profile.elapsedAt(arrivals.position(slot));
+    }
 }
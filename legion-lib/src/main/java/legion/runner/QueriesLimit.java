@@ -32,12 +32,45 @@ import java.util.function.BooleanSupplier;
 
 public class QueriesLimit implements BooleanSupplier {
     private final AtomicInteger countdown = new AtomicInteger();
+    private final boolean unlimited;
 
     public QueriesLimit(int limit) {
+        this(limit, false);
+    }
+
+    private QueriesLimit(int limit, boolean unlimited) {
         this.countdown.set(limit);
+        this.unlimited = unlimited;
+    }
+
+    public static QueriesLimit unlimited() {
+        return new QueriesLimit(0, true);
     }
 
     public boolean getAsBoolean() {
-        return countdown.getAndDecrement() > 0;
+        return acquire(1) == 1;
+    }
+
+    // takes up to `count` queries from the limit and returns how many were granted
+    public int acquire(int count) {
+        if (unlimited) {
+            return count;
+        }
+        while (true) {
+            int available = countdown.get();
+            if (available <= 0) {
+                return 0;
+            }
+            int granted = Integer.min(available, count);
+            if (countdown.compareAndSet(available, available - granted)) {
+                return granted;
+            }
+        }
+    }
+
+    public void release(int count) {
+        if (!unlimited && count > 0) {
+            countdown.addAndGet(count);
+        }
     }
 }
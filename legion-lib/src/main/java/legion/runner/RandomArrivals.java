@@ -0,0 +1,121 @@
+/*
+ * Copyright (c) 2015, IponWeb (http://www.iponweb.com)
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the <organization> nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package legion.runner;
+
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.DoubleSupplier;
+
+// Slots are split into blocks, gaps inside a block are sampled from a random generator seeded by the run seed
+// and block index, then scaled so every block takes exactly BLOCK_SIZE mean intervals. So the mean rate is exact
+// over the run, positions do not depend on the order slots are requested in, and runs with the same seed repeat.
+// Loaders ask for positions when they take tasks, so cached blocks are regenerated in place instead of allocated.
+public class RandomArrivals implements ArrivalProcess {
+    static final int BLOCK_SIZE = 1024;
+    private static final int CACHE_SIZE = 64;
+
+    private final InterArrivalDistribution distribution;
+    private final long seed;
+    private final Block[] cache = new Block[CACHE_SIZE];
+
+    public RandomArrivals(InterArrivalDistribution distribution, long seed) {
+        this.distribution = distribution;
+        this.seed = seed;
+        for (int i = 0; i < CACHE_SIZE; ++i) {
+            cache[i] = new Block();
+        }
+    }
+
+    // offsets are read optimistically and validated, a writer regenerates them for another block under the lock
+    private static class Block implements DoubleSupplier {
+        final StampedLock lock = new StampedLock();
+        final double[] offsets = new double[BLOCK_SIZE];
+        long index = -1;
+        // SplitMix64 state, same sequence of doubles as SplittableRandom with the same seed
+        long state;
+
+        @Override
+        public double getAsDouble() {
+            long z = state += 0x9E3779B97F4A7C15L;
+            z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+            z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+            return ((z ^ (z >>> 31)) >>> 11) * 0x1.0p-53;
+        }
+    }
+
+    private static long mix(long seed, long index) {
+        long h = seed * 0x9E3779B97F4A7C15L + index;
+        h = (h ^ (h >>> 33)) * 0xFF51AFD7ED558CCDL;
+        h = (h ^ (h >>> 33)) * 0xC4CEB9FE1A85EC53L;
+        return h ^ (h >>> 33);
+    }
+
+    private void generate(Block block, long index) {
+        block.state = mix(seed, index);
+        double[] offsets = block.offsets;
+        double sum = 0;
+        for (int i = 0; i < BLOCK_SIZE; ++i) {
+            offsets[i] = sum;
+            // the last gap is from the last slot to the start of the next block
+            sum += distribution.sample(block);
+        }
+        if (sum <= 0) {
+            // degenerate sample, keep slots evenly spaced
+            for (int i = 0; i < BLOCK_SIZE; ++i) {
+                offsets[i] = i;
+            }
+        } else {
+            for (int i = 0; i < BLOCK_SIZE; ++i) {
+                offsets[i] = offsets[i] * BLOCK_SIZE / sum;
+            }
+        }
+        block.index = index;
+    }
+
+    @Override
+    public double position(long slot) {
+        long index = slot / BLOCK_SIZE;
+        int offset = (int) (slot % BLOCK_SIZE);
+        Block block = cache[(int) (index % CACHE_SIZE)];
+        long stamp = block.lock.tryOptimisticRead();
+        if (block.index == index) {
+            double position = block.offsets[offset];
+            if (block.lock.validate(stamp)) {
+                return index * BLOCK_SIZE + position;
+            }
+        }
+        stamp = block.lock.writeLock();
+        try {
+            if (block.index != index) {
+                generate(block, index);
+            }
+            return index * BLOCK_SIZE + block.offsets[offset];
+        } finally {
+            block.lock.unlockWrite(stamp);
+        }
+    }
+}
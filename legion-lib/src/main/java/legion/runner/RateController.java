@@ -0,0 +1,135 @@
+/*
+ * Copyright (c) 2015, IponWeb (http://www.iponweb.com)
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the <organization> nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package legion.runner;
+
+import legion.LatencyHistogram;
+import legion.Metrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+// Closed-loop controller which looks for the highest rate meeting SLO. Every interval it checks latency
+// percentile of queries, error rate and start lag of the last interval, then raises rate if SLO is met and lowers
+// it otherwise. The step is halved on every change of direction and doubled back after a few moves in the same
+// direction, so the rate settles near the limit and still follows changes of service capacity.
+public class RateController implements Runnable {
+    private static final Logger LOGGER = LoggerFactory.getLogger(RateController.class);
+    private static final double MIN_STEP = 0.01;
+    private static final int MOVES_TO_GROW_STEP = 3;
+
+    private final SloTarget target;
+    private final AdjustableProfile profile;
+    private final QpsScheduler scheduler;
+    private final Metrics metrics;
+
+    private double rate;
+    private double step;
+    private int direction;
+    private int sameDirectionMoves;
+
+    public RateController(SloTarget target, AdjustableProfile profile, QpsScheduler scheduler, Metrics metrics) {
+        this.target = target;
+        this.profile = profile;
+        this.scheduler = scheduler;
+        this.metrics = metrics;
+        this.rate = target.initialRate;
+        this.step = target.step;
+    }
+
+    @Override
+    public void run() {
+        metrics.targetRate.put(0L, rate);
+        LatencyHistogram.Snapshot queries = metrics.queriesHistogram.getSnapshot();
+        LatencyHistogram.Snapshot startLag = metrics.startLagHistogram.getSnapshot();
+        // timed out tasks are errors too
+        long exceptions = metrics.exceptions.getCount() + metrics.timeouts.getCount();
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                Thread.sleep(target.intervalMs);
+
+                LatencyHistogram.Snapshot currentQueries = metrics.queriesHistogram.getSnapshot();
+                LatencyHistogram.Snapshot currentStartLag = metrics.startLagHistogram.getSnapshot();
+                long currentExceptions = metrics.exceptions.getCount() + metrics.timeouts.getCount();
+                LatencyHistogram.Snapshot window = currentQueries.minus(queries);
+                double errorRate = window.getCount() > 0
+                        ? (double) (currentExceptions - exceptions) / window.getCount()
+                        : 0;
+                // queued tasks and tasks taken by loaders but not completed yet
+                long completed = metrics.completed.sum();
+                long pending = metrics.queueDepth.getValue() + metrics.taken.sum() - completed;
+                double previous = rate;
+                double next = nextRate(
+                        window.getCount(),
+                        window.getValue(target.percentile),
+                        errorRate,
+                        currentStartLag.minus(startLag).getValue(target.percentile),
+                        pending
+                );
+                queries = currentQueries;
+                startLag = currentStartLag;
+                exceptions = currentExceptions;
+
+                if (next != previous) {
+                    long elapsed = scheduler.elapsed();
+                    LOGGER.debug("Change rate from {} to {}", previous, next);
+                    profile.setRate(elapsed, next);
+                    metrics.targetRate.put(elapsed / 1000000, next);
+                }
+            }
+        } catch (InterruptedException e) {
+            LOGGER.trace("Rate controller is interrupted");
+        }
+    }
+
+    double nextRate(long queries, long latency, double errorRate, long startLag, long pending) {
+        long latencyLimit = (long) (target.latencyMs * 1000000);
+        // start lag shows that loaders can't keep up with the rate even if service latency is fine.
+        // Nothing completed while tasks are waiting means the service is stuck for the whole interval.
+        boolean violated = latency > latencyLimit || errorRate > target.maxErrorRate || startLag > latencyLimit
+                || queries == 0 && pending > 0;
+        if (queries == 0 && !violated) {
+            return rate;
+        }
+        int newDirection = violated ? -1 : 1;
+        if (direction != 0 && newDirection != direction) {
+            step = Double.max(step / 2, MIN_STEP);
+            sameDirectionMoves = 0;
+        } else if (++sameDirectionMoves >= MOVES_TO_GROW_STEP) {
+            step = Double.min(step * 2, target.step);
+            sameDirectionMoves = 0;
+        }
+        direction = newDirection;
+
+        double next = violated ? rate / (1 + step) : rate * (1 + step);
+        next = Double.max(next, target.minRate);
+        if (target.maxRate > 0) {
+            next = Double.min(next, target.maxRate);
+        }
+        rate = next;
+        return next;
+    }
+}
@@ -0,0 +1,198 @@
+/*
+ * Copyright (c) 2015, IponWeb (http://www.iponweb.com)
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the <organization> nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package legion.runner;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+// Bounded MPMC queue (D. Vyukov's algorithm): every slot has a sequence number which tells
+// producers and consumers whether the slot is free for the current lap, so neither side takes a lock.
+public class RingBufferTaskQueue<Task> implements TaskQueue<Task> {
+    private static final int SPINS = 200;
+    private static final long MIN_PARK_NANOS = 1000;
+    private static final long MAX_PARK_NANOS = 1000000;
+
+    private final int mask;
+    private final AtomicLongArray sequences;
+    private final AtomicReferenceArray<ScheduledTask<Task>> slots;
+    private final AtomicLong enqueuePosition = new AtomicLong();
+    private final AtomicLong dequeuePosition = new AtomicLong();
+
+    public RingBufferTaskQueue(int capacity) {
+        if (capacity < 2) {
+            throw new IllegalArgumentException("Capacity must be at least 2");
+        }
+        int size = Integer.highestOneBit(capacity - 1) << 1;
+        mask = size - 1;
+        sequences = new AtomicLongArray(size);
+        slots = new AtomicReferenceArray<>(size);
+        for (int i = 0; i < size; ++i) {
+            sequences.set(i, i);
+        }
+    }
+
+    static int idle(int iteration) throws InterruptedException {
+        if (iteration < SPINS) {
+            Thread.onSpinWait();
+        } else {
+            int shift = Integer.min(iteration - SPINS, 10);
+            LockSupport.parkNanos(Long.min(MIN_PARK_NANOS << shift, MAX_PARK_NANOS));
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+        }
+        return iteration + 1;
+    }
+
+    public int capacity() {
+        return mask + 1;
+    }
+
+    public boolean offer(ScheduledTask<Task> task) {
+        long position = enqueuePosition.get();
+        while (true) {
+            int index = (int) position & mask;
+            long diff = sequences.get(index) - position;
+            if (diff == 0) {
+                if (enqueuePosition.compareAndSet(position, position + 1)) {
+                    slots.lazySet(index, task);
+                    sequences.lazySet(index, position + 1);
+                    return true;
+                }
+            } else if (diff < 0) {
+                return false;
+            }
+            position = enqueuePosition.get();
+        }
+    }
+
+    // claims all slots for the batch with a single CAS, so the batch is either enqueued completely or not at all
+    public boolean offer(List<ScheduledTask<Task>> tasks) {
+        int count = tasks.size();
+        long position = enqueuePosition.get();
+        while (true) {
+            boolean claimable = true;
+            for (int i = 0; i < count && claimable; ++i) {
+                long diff = sequences.get((int) (position + i) & mask) - (position + i);
+                if (diff < 0) {
+                    return false;
+                }
+                claimable = diff == 0;
+            }
+            if (claimable && enqueuePosition.compareAndSet(position, position + count)) {
+                for (int i = 0; i < count; ++i) {
+                    int index = (int) (position + i) & mask;
+                    slots.lazySet(index, tasks.get(i));
+                    sequences.lazySet(index, position + i + 1);
+                }
+                return true;
+            }
+            position = enqueuePosition.get();
+        }
+    }
+
+    public ScheduledTask<Task> poll() {
+        long position = dequeuePosition.get();
+        while (true) {
+            int index = (int) position & mask;
+            long diff = sequences.get(index) - (position + 1);
+            if (diff == 0) {
+                if (dequeuePosition.compareAndSet(position, position + 1)) {
+                    ScheduledTask<Task> task = slots.get(index);
+                    slots.lazySet(index, null);
+                    sequences.lazySet(index, position + mask + 1);
+                    return task;
+                }
+            } else if (diff < 0) {
+                return null;
+            }
+            position = dequeuePosition.get();
+        }
+    }
+
+    // head task without taking it, null when empty; another consumer may take it at any moment
+    public ScheduledTask<Task> peek() {
+        long position = dequeuePosition.get();
+        int index = (int) position & mask;
+        if (sequences.get(index) != position + 1) {
+            return null;
+        }
+        return slots.get(index);
+    }
+
+    @Override
+    public void put(ScheduledTask<Task> task) throws InterruptedException {
+        int iteration = 0;
+        while (!offer(task)) {
+            iteration = idle(iteration);
+        }
+    }
+
+    @Override
+    public void putAll(List<ScheduledTask<Task>> tasks) throws InterruptedException {
+        if (tasks.size() > capacity()) {
+            TaskQueue.super.putAll(tasks);
+            return;
+        }
+        int iteration = 0;
+        while (!offer(tasks)) {
+            iteration = idle(iteration);
+        }
+    }
+
+    @Override
+    public ScheduledTask<Task> take() throws InterruptedException {
+        int iteration = 0;
+        ScheduledTask<Task> task;
+        while ((task = poll()) == null) {
+            iteration = idle(iteration);
+        }
+        return task;
+    }
+
+    @Override
+    public int clear() {
+        int dropped = 0;
+        ScheduledTask<Task> task;
+        while ((task = poll()) != null) {
+            if (!ScheduledTask.isFinalizer(task)) {
+                dropped++;
+            }
+        }
+        return dropped;
+    }
+
+    @Override
+    public int size() {
+        long size = enqueuePosition.get() - dequeuePosition.get();
+        return (int) Long.max(0, Long.min(size, capacity()));
+    }
+}
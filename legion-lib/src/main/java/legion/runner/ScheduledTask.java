@@ -27,12 +27,19 @@
 
 package legion.runner;
 
-import java.util.concurrent.BlockingQueue;
-
 public class ScheduledTask<Task> {
     private static final ScheduledTask finalizer = new ScheduledTask<>(null, -1);
-    public final Task task;
-    public final long startTime;
+    // fields are reassigned when the object is reused by ScheduledTaskPool
+    public Task task;
+    public long startTime;
+    // slot of QpsScheduler when the rate can be adjusted, so start time is recomputed when the task is taken;
+    // negative otherwise
+    public long slot = -1;
+    // type of the task given by TaskClassifier, negative when tasks are not classified
+    public int tag = -1;
+    // System.nanoTime() when the task was put to the queue and taken from it
+    public long enqueueTime;
+    public long dequeueTime;
 
     public ScheduledTask(Task task, long startTime) {
         this.task = task;
@@ -47,7 +54,7 @@ public class ScheduledTask<Task> {
         return task == finalizer;
     }
 
-    public static <T> void addFinalizer(BlockingQueue<ScheduledTask<T>> queue) {
+    public static <T> void addFinalizer(TaskQueue<T> queue) {
         boolean interrupted = false;
         while (true) {
             try {
@@ -0,0 +1,60 @@
+/*
+ * Copyright (c) 2015, IponWeb (http://www.iponweb.com)
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the <organization> nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package legion.runner;
+
+// Recycles ScheduledTask objects between scheduler and loader threads, so steady state scheduling doesn't allocate.
+// Objects are created when the pool is empty and dropped when it is full.
+public class ScheduledTaskPool<Task> {
+    private final RingBufferTaskQueue<Task> free;
+
+    public ScheduledTaskPool(int capacity) {
+        free = new RingBufferTaskQueue<>(Integer.max(capacity, 2));
+    }
+
+    public ScheduledTask<Task> acquire(Task task, long startTime) {
+        ScheduledTask<Task> scheduledTask = free.poll();
+        if (scheduledTask == null) {
+            scheduledTask = new ScheduledTask<>(task, startTime);
+        } else {
+            scheduledTask.task = task;
+            scheduledTask.startTime = startTime;
+        }
+        scheduledTask.slot = -1;
+        scheduledTask.tag = -1;
+        return scheduledTask;
+    }
+
+    // task must not be used after it is released
+    public void release(ScheduledTask<Task> task) {
+        if (ScheduledTask.isFinalizer(task)) {
+            return;
+        }
+        task.task = null;
+        free.offer(task);
+    }
+}
@@ -27,113 +27,250 @@
 
 package legion.runner;
 
-import com.codahale.metrics.Timer;
+import com.codahale.metrics.Counter;
 import legion.Generator;
 import legion.Metrics;
+import legion.TaskClassifier;
+import legion.TimestampedGenerator;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Properties;
-import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
-import java.util.function.BooleanSupplier;
 
 public class SchedulerThread<Task> extends Thread {
     private static final Logger LOGGER = LoggerFactory.getLogger(SchedulerThread.class);
+    private static final int REPLAY_BATCH_SIZE = 256;
 
-    private final BlockingQueue<ScheduledTask<Task>> queue;
+    private final TaskQueue<Task> queue;
+    private final ScheduledTaskPool<Task> pool;
     private final Properties threadProperties;
     private final QpsScheduler scheduler;
-    private final BooleanSupplier canSchedule;
+    // null when tasks are not classified
+    private final TaskClassifier<Task> classifier;
+    private final QueriesLimit canSchedule;
+    // null when tasks are generated during the test
+    private final Pregeneration pregeneration;
     private final Runnable doneNotifier;
     private final Metrics metrics;
     private final AtomicInteger generatorsCounter;
+    private final List<Task> generated = new ArrayList<>();
+    private final List<ScheduledTask<Task>> scheduled = new ArrayList<>();
+    private final List<Task> pregenerated = new ArrayList<>();
 
     private Iterator<Generator<Task>> generatorsIterator;
     private Generator<Task> currentGenerator;
+    private Counter blockedTime;
+    private Counter runningTime;
+    private long runningSince;
 
     public SchedulerThread(
-            BlockingQueue<ScheduledTask<Task>> queue,
+            TaskQueue<Task> queue,
+            ScheduledTaskPool<Task> pool,
             List<Generator<Task>> generators,
             QpsScheduler scheduler,
-            BooleanSupplier canSchedule,
+            TaskClassifier<Task> classifier,
+            QueriesLimit canSchedule,
+            Pregeneration pregeneration,
             Runnable doneNotifier,
             Properties threadProperties,
             Metrics metrics,
             AtomicInteger generatorsCounter
     ) {
         this.queue = queue;
+        this.pool = pool;
         this.threadProperties = threadProperties;
         this.generatorsIterator = generators.iterator();
         this.scheduler = scheduler;
         this.canSchedule = canSchedule;
+        this.pregeneration = pregeneration;
         this.doneNotifier = doneNotifier;
         this.metrics = metrics;
+        this.classifier = classifier;
         this.generatorsCounter = generatorsCounter;
     }
 
     @Override
     public void run() {
+        blockedTime = metrics.threadTime(getName(), Metrics.BLOCKED_TIME_SUFFIX);
+        runningTime = metrics.threadTime(getName(), Metrics.RUNNING_TIME_SUFFIX);
         try {
-            if (!canSchedule.getAsBoolean()) {
-                return;
-            }
-            ScheduledTask<Task> task = genTask();
-            while (task != null) {
+            if (pregeneration != null) {
                 try {
-                    queue.put(task);
-                } catch (InterruptedException e) {
-                    break;
+                    pregenerate();
+                } finally {
+                    pregeneration.done();
                 }
-                if (!canSchedule.getAsBoolean()) {
+                pregeneration.awaitStart();
+                runningSince = System.nanoTime();
+                replay();
+            }
+            runningSince = System.nanoTime();
+            while (currentGenerator != null || nextGenerator()) {
+                int batchSize = currentGenerator instanceof TimestampedGenerator ? 1 : currentGenerator.batchSize();
+                boolean scheduled = batchSize > 1 ? scheduleBatch(batchSize) : scheduleTask();
+                if (!scheduled) {
                     break;
                 }
-                task = genTask();
             }
+        } catch (InterruptedException e) {
+            LOGGER.trace("Interrupted");
+        } catch (Exception e) {
+            LOGGER.error("Generator thread ends with error", e);
         } finally {
+            if (currentGenerator != null) {
+                currentGenerator.close();
+            }
             doneNotifier.run();
         }
     }
 
-    ScheduledTask<Task> genTask() {
-        try {
-            Task task;
-            while (true) {
-                if (currentGenerator == null) {
-                    if (generatorsIterator.hasNext()) {
-                        initGenerator();
-                    } else {
-                        return null;
-                    }
-                }
-                Timer.Context timerCtx = metrics.generator.time();
-                task = currentGenerator.generate();
-                if (task != null) {
-                    timerCtx.stop();
-                    return new ScheduledTask<>(task, scheduler.next());
-                }
-                if (generatorsIterator.hasNext()) {
-                    initGenerator();
-                } else {
-                    currentGenerator.close();
-                    return null;
-                }
+    // returns false when thread can't schedule more tasks
+    private boolean scheduleTask() throws Exception {
+        if (!canSchedule.getAsBoolean()) {
+            return false;
+        }
+        long startTime = System.nanoTime();
+        Task task = currentGenerator.generate();
+        if (task == null) {
+            canSchedule.release(1);
+            return nextGenerator();
+        }
+        metrics.generator.update(System.nanoTime() - startTime, TimeUnit.NANOSECONDS);
+        long slot = -1;
+        long taskStartTime;
+        if (currentGenerator instanceof TimestampedGenerator) {
+            taskStartTime = scheduler.traceTime(((TimestampedGenerator<Task>) currentGenerator).offset());
+        } else if (scheduler.isAdjustable()) {
+            slot = scheduler.reserve(1);
+            taskStartTime = scheduler.slotTime(slot);
+        } else {
+            taskStartTime = scheduler.next();
+        }
+        ScheduledTask<Task> scheduledTask = acquire(task, taskStartTime);
+        scheduledTask.slot = slot;
+        long enqueueTime = System.nanoTime();
+        scheduledTask.enqueueTime = enqueueTime;
+        metrics.schedulerLag.update(Long.max(enqueueTime - scheduledTask.startTime, 0));
+        queue.put(scheduledTask);
+        updateTimes(enqueueTime);
+        return true;
+    }
+
+    private boolean scheduleBatch(int batchSize) throws Exception {
+        int granted = canSchedule.acquire(batchSize);
+        if (granted == 0) {
+            return false;
+        }
+        generated.clear();
+        long startTime = System.nanoTime();
+        int count = currentGenerator.generate(generated, granted);
+        long generationTime = System.nanoTime() - startTime;
+        canSchedule.release(granted - count);
+        if (count == 0) {
+            return nextGenerator();
+        }
+
+        for (int i = 0; i < count; ++i) {
+            metrics.generator.update(generationTime / count, TimeUnit.NANOSECONDS);
+        }
+        enqueueBatch(generated, 0, count);
+        return true;
+    }
+
+    // generates tasks until pre-generation limit, queries limit or generators are exhausted;
+    // timestamped generators are left for the test, their tasks can't be scheduled by slots
+    private void pregenerate() throws Exception {
+        while (!isInterrupted() && (currentGenerator != null || nextGenerator())) {
+            if (currentGenerator instanceof TimestampedGenerator) {
+                return;
+            }
+            int granted = pregeneration.limit.acquire(currentGenerator.batchSize());
+            int allowed = canSchedule.acquire(granted);
+            pregeneration.limit.release(granted - allowed);
+            if (allowed == 0) {
+                return;
+            }
+            long startTime = System.nanoTime();
+            int count = currentGenerator.generate(pregenerated, allowed);
+            long generationTime = System.nanoTime() - startTime;
+            canSchedule.release(allowed - count);
+            pregeneration.limit.release(allowed - count);
+            for (int i = 0; i < count; ++i) {
+                metrics.generator.update(generationTime / count, TimeUnit.NANOSECONDS);
+            }
+            pregeneration.generated(count);
+            if (count == 0) {
+                nextGenerator();
+            }
+        }
+    }
+
+    private void replay() throws InterruptedException {
+        for (int from = 0; from < pregenerated.size(); from += REPLAY_BATCH_SIZE) {
+            int count = Integer.min(REPLAY_BATCH_SIZE, pregenerated.size() - from);
+            enqueueBatch(pregenerated, from, count);
+            for (int i = from; i < from + count; ++i) {
+                // scheduled tasks are dropped as soon as possible
+                pregenerated.set(i, null);
             }
-        } catch (Exception e) {
-            LOGGER.error("Generator thread ends with error", e);
-            return null;
         }
+        pregenerated.clear();
     }
 
-    void initGenerator() {
+    private void enqueueBatch(List<Task> tasks, int from, int count) throws InterruptedException {
+        long firstSlot = scheduler.reserve(count);
+        scheduled.clear();
+        boolean adjustable = scheduler.isAdjustable();
+        for (int i = 0; i < count; ++i) {
+            ScheduledTask<Task> scheduledTask = acquire(tasks.get(from + i), scheduler.slotTime(firstSlot + i));
+            if (adjustable) {
+                scheduledTask.slot = firstSlot + i;
+            }
+            scheduled.add(scheduledTask);
+        }
+        long enqueueTime = System.nanoTime();
+        for (int i = 0; i < count; ++i) {
+            ScheduledTask<Task> scheduledTask = scheduled.get(i);
+            scheduledTask.enqueueTime = enqueueTime;
+            metrics.schedulerLag.update(Long.max(enqueueTime - scheduledTask.startTime, 0));
+        }
+        queue.putAll(scheduled);
+        updateTimes(enqueueTime);
+    }
+
+    private ScheduledTask<Task> acquire(Task task, long startTime) {
+        ScheduledTask<Task> scheduledTask = pool.acquire(task, startTime);
+        if (classifier != null) {
+            scheduledTask.tag = classifier.tag(task);
+        }
+        return scheduledTask;
+    }
+
+    // `enqueueTime` is taken right before the tasks were put to the queue
+    private void updateTimes(long enqueueTime) {
+        long now = System.nanoTime();
+        blockedTime.inc(now - enqueueTime);
+        runningTime.inc(now - runningSince);
+        runningSince = now;
+    }
+
+    private boolean nextGenerator() {
         if (currentGenerator != null) {
             currentGenerator.close();
+            currentGenerator = null;
+        }
+        if (!generatorsIterator.hasNext()) {
+            return false;
         }
         currentGenerator = generatorsIterator.next();
         Properties p = (Properties) threadProperties.clone();
         p.setProperty("generatorIndex", Integer.toString(generatorsCounter.getAndIncrement()));
         currentGenerator.init(p, metrics.registry);
+        return true;
     }
 }
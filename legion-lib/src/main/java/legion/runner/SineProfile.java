@@ -0,0 +1,87 @@
+/*
+ * Copyright (c) 2015, IponWeb (http://www.iponweb.com)
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the <organization> nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package legion.runner;
+
+public class SineProfile implements LoadProfile {
+    private static final int MAX_ITERATIONS = 64;
+    private static final double PRECISION = 1e-6;
+
+    private final double mean;
+    private final double amplitude;
+    private final double period;
+    private final double frequency;
+
+    public SineProfile(double mean, double amplitude, double periodSeconds) {
+        if (mean <= 0 || amplitude < 0 || amplitude >= mean || periodSeconds <= 0) {
+            throw new IllegalArgumentException("Sine profile requires 0 <= amplitude < mean and positive period");
+        }
+        this.mean = mean;
+        this.amplitude = amplitude;
+        this.period = periodSeconds;
+        this.frequency = 2 * Math.PI / periodSeconds;
+    }
+
+    private double rateAt(double time) {
+        return mean + amplitude * Math.sin(frequency * time);
+    }
+
+    private double countAt(double time) {
+        return mean * time + amplitude * (1 - Math.cos(frequency * time)) / frequency;
+    }
+
+    @Override
+    public double rate(long elapsed) {
+        return rateAt(elapsed / 1e9);
+    }
+
+    @Override
+    public long elapsedAt(double slots) {
+        // whole periods are skipped exactly, the rest is found by Newton's method kept inside the bracket
+        double periods = Math.floor(slots / (mean * period));
+        double remaining = slots - periods * mean * period;
+        double low = remaining / (mean + amplitude);
+        double high = remaining / (mean - amplitude);
+        double time = remaining / mean;
+        for (int i = 0; i < MAX_ITERATIONS; ++i) {
+            double error = countAt(time) - remaining;
+            if (Math.abs(error) < PRECISION) {
+                break;
+            }
+            if (error > 0) {
+                high = time;
+            } else {
+                low = time;
+            }
+            time -= error / rateAt(time);
+            if (time <= low || time >= high) {
+                time = (low + high) / 2;
+            }
+        }
+        return (long) ((periods * period + time) * 1e9);
+    }
+}
@@ -0,0 +1,58 @@
+/*
+ * Copyright (c) 2015, IponWeb (http://www.iponweb.com)
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the <organization> nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package legion.runner;
+
+import java.util.List;
+import java.util.function.IntPredicate;
+
+public interface TaskQueue<Task> {
+    void put(ScheduledTask<Task> task) throws InterruptedException;
+
+    default void putAll(List<ScheduledTask<Task>> tasks) throws InterruptedException {
+        for (ScheduledTask<Task> task : tasks) {
+            put(task);
+        }
+    }
+
+    ScheduledTask<Task> take() throws InterruptedException;
+
+    // view used by a single consumer, queues with per-consumer parts take from its own part first
+    default TaskQueue<Task> forWorker(int worker) {
+        return this;
+    }
+
+    // tells which workers take tasks (see ActiveWorkers), called again when that changes; queues with
+    // per-consumer parts keep tasks out of parts of inactive workers
+    default void setActiveWorkers(IntPredicate active) {
+    }
+
+    // drops queued tasks and returns their number, finalizer is not counted
+    int clear();
+
+    int size();
+}
@@ -0,0 +1,164 @@
+/*
+ * Copyright (c) 2015, IponWeb (http://www.iponweb.com)
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the <organization> nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package legion.runner;
+
+import legion.Metrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Enforces the per-task deadline. Loader workers mark start and end of every task in their slot and a watchdog
+// interrupts threads which run a task longer than the timeout, so the steady state doesn't allocate.
+// Futures of async loaders are cancelled by a task scheduled for their deadline.
+public class TaskTimeouts {
+    private static final Logger LOGGER = LoggerFactory.getLogger(TaskTimeouts.class);
+    private static final long MIN_CHECK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+    private static final long MAX_CHECK_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+
+    // task of a loader worker thread which may be interrupted by the watchdog
+    public class Slot {
+        private static final int IDLE = 0;
+        private static final int RUNNING = 1;
+        private static final int TIMED_OUT = 2;
+
+        private final Thread thread;
+        private final AtomicInteger state = new AtomicInteger(IDLE);
+        private volatile long deadline;
+
+        Slot(Thread thread) {
+            this.thread = thread;
+        }
+
+        public void start(long startTime) {
+            deadline = startTime + timeout;
+            state.set(RUNNING);
+        }
+
+        // returns whether the task timed out, then the interrupt of the watchdog is cleared
+        public boolean finish() {
+            if (state.compareAndSet(RUNNING, IDLE)) {
+                return false;
+            }
+            // the watchdog interrupts holding the lock, so the interrupt is already delivered
+            synchronized (this) {
+                state.set(IDLE);
+            }
+            Thread.interrupted();
+            return true;
+        }
+
+        private synchronized void check(long now) {
+            if (state.get() == RUNNING && now - deadline >= 0 && state.compareAndSet(RUNNING, TIMED_OUT)) {
+                thread.interrupt();
+            }
+        }
+    }
+
+    private final long timeout;
+    private final TimeoutPolicy policy;
+    private final List<Slot> slots = new CopyOnWriteArrayList<>();
+    // daemon, so the watchdog doesn't outlive a test which failed to start before close()
+    private final ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, r -> {
+        Thread thread = new Thread(r, "TaskTimeouts");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public TaskTimeouts(long timeoutMs, TimeoutPolicy policy) {
+        if (timeoutMs <= 0) {
+            throw new IllegalArgumentException("Task timeout must be positive");
+        }
+        timeout = TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+        this.policy = policy;
+        executor.setRemoveOnCancelPolicy(true);
+        long period = Long.max(MIN_CHECK_NANOS, Long.min(timeout / 10, MAX_CHECK_NANOS));
+        executor.scheduleAtFixedRate(this::check, period, period, TimeUnit.NANOSECONDS);
+    }
+
+    // nanoseconds
+    public long getTimeout() {
+        return timeout;
+    }
+
+    // called by a loader worker thread before its first task
+    public Slot register() {
+        Slot slot = new Slot(Thread.currentThread());
+        slots.add(slot);
+        return slot;
+    }
+
+    public void unregister(Slot slot) {
+        slots.remove(slot);
+    }
+
+    // cancels the future of an async loader at the deadline, the returned stage completes with
+    // CancellationException then
+    public CompletionStage<?> withTimeout(CompletionStage<?> stage, long startTime) {
+        CompletableFuture<?> future = stage.toCompletableFuture();
+        if (future.isDone()) {
+            return future;
+        }
+        ScheduledFuture<?> cancel = executor.schedule(
+                () -> future.cancel(true),
+                startTime + timeout - System.nanoTime(),
+                TimeUnit.NANOSECONDS
+        );
+        return future.whenComplete((result, e) -> cancel.cancel(false));
+    }
+
+    // counts a timed out task, its latency is recorded as the policy says
+    public void record(Metrics metrics, ScheduledTask<?> task, long startTime, long endTime) {
+        metrics.timeouts.mark();
+        long serviceTime = policy.serviceTime(endTime - startTime, timeout);
+        long responseTime = startTime - task.startTime + serviceTime;
+        if (serviceTime >= 0) {
+            metrics.queries.update(serviceTime, TimeUnit.NANOSECONDS);
+            metrics.responses.update(responseTime, TimeUnit.NANOSECONDS);
+        }
+        metrics.recordTagTimeout(task.tag, serviceTime, responseTime);
+    }
+
+    private void check() {
+        long now = System.nanoTime();
+        for (Slot slot : slots) {
+            slot.check(now);
+        }
+    }
+
+    public void close() {
+        LOGGER.trace("Stop task timeouts watchdog");
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright (c) 2015, IponWeb (http://www.iponweb.com)
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the <organization> nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package legion.runner;
+
+import legion.LatencyHistogram;
+import legion.Metrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+// Ends warm-up once throughput and median latency of the last few intervals stay within a tolerance
+// of each other, or when the longest allowed warm-up is over.
+public class WarmupDetector implements Runnable {
+    private static final Logger LOGGER = LoggerFactory.getLogger(WarmupDetector.class);
+    private static final int STABLE_INTERVALS = 3;
+    private static final double THROUGHPUT_TOLERANCE = 0.1;
+    private static final double LATENCY_TOLERANCE = 0.2;
+
+    private final int intervalMs;
+    private final long maxWarmupMs;
+    private final Metrics metrics;
+    private final long[] throughputs = new long[STABLE_INTERVALS];
+    private final long[] latencies = new long[STABLE_INTERVALS];
+    private int intervals;
+
+    public WarmupDetector(int intervalMs, int maxWarmupSeconds, Metrics metrics) {
+        this.intervalMs = intervalMs;
+        this.maxWarmupMs = maxWarmupSeconds * 1000L;
+        this.metrics = metrics;
+    }
+
+    @Override
+    public void run() {
+        LatencyHistogram.Snapshot queries = metrics.queriesHistogram.getSnapshot();
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                Thread.sleep(intervalMs);
+
+                LatencyHistogram.Snapshot currentQueries = metrics.queriesHistogram.getSnapshot();
+                LatencyHistogram.Snapshot window = currentQueries.minus(queries);
+                queries = currentQueries;
+                boolean stable = observe(window.getCount(), window.getValue(0.5));
+                if (stable || metrics.warmupDuration() >= maxWarmupMs) {
+                    LOGGER.info("Warm-up is over after {}ms, stable: {}", metrics.warmupDuration(), stable);
+                    metrics.endWarmup();
+                    return;
+                }
+            }
+        } catch (InterruptedException e) {
+            LOGGER.trace("Warm-up detector is interrupted");
+        }
+    }
+
+    // returns true when the last intervals are stable
+    boolean observe(long queries, long latency) {
+        throughputs[intervals % STABLE_INTERVALS] = queries;
+        latencies[intervals % STABLE_INTERVALS] = latency;
+        intervals++;
+        return intervals >= STABLE_INTERVALS
+                && queries > 0
+                && isStable(throughputs, THROUGHPUT_TOLERANCE)
+                && isStable(latencies, LATENCY_TOLERANCE);
+    }
+
+    private static boolean isStable(long[] values, double tolerance) {
+        long min = Long.MAX_VALUE;
+        long max = Long.MIN_VALUE;
+        for (long value : values) {
+            min = Long.min(min, value);
+            max = Long.max(max, value);
+        }
+        return max - min <= tolerance * max;
+    }
+}
@@ -0,0 +1,244 @@
+/*
+ * Copyright (c) 2015, IponWeb (http://www.iponweb.com)
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the <organization> nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package legion.runner;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.IntPredicate;
+
+// Every worker has its own ring buffer: producers spread tasks between them, workers take from their own
+// buffer first and steal from others when it is empty. So consumers don't contend on a single queue head.
+// When the queue is filled ahead of time no buffer gets empty, so before taking its own head task a worker
+// compares it with heads of two other buffers, one of them chosen round-robin, and takes the earliest one.
+// So tasks don't wait past their start time behind a worker blocked in its loader.
+public class WorkStealingTaskQueue<Task> implements TaskQueue<Task> {
+    private static final int MIN_LOCAL_CAPACITY = 16;
+
+    private final RingBufferTaskQueue<Task>[] locals;
+    // finalizer is not queued: workers get it only when all buffers are drained
+    private volatile ScheduledTask<Task> finalizer;
+    private volatile IntPredicate active = worker -> true;
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public WorkStealingTaskQueue(int capacity, int workers) {
+        if (workers < 1) {
+            throw new IllegalArgumentException("At least one worker is required");
+        }
+        locals = new RingBufferTaskQueue[workers];
+        int localCapacity = Integer.max(capacity / workers, MIN_LOCAL_CAPACITY);
+        for (int i = 0; i < workers; ++i) {
+            locals[i] = new RingBufferTaskQueue<>(localCapacity);
+        }
+    }
+
+    @Override
+    public void put(ScheduledTask<Task> task) throws InterruptedException {
+        if (ScheduledTask.isFinalizer(task)) {
+            finalizer = task;
+            return;
+        }
+        int iteration = 0;
+        while (!offer(task)) {
+            iteration = RingBufferTaskQueue.idle(iteration);
+        }
+    }
+
+    // puts the task to a buffer of an active worker
+    private boolean offer(ScheduledTask<Task> task) {
+        IntPredicate isActive = active;
+        int start = ThreadLocalRandom.current().nextInt(locals.length);
+        for (int i = 0; i < locals.length; ++i) {
+            int worker = (start + i) % locals.length;
+            if (isActive.test(worker) && locals[worker].offer(task)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public void putAll(List<ScheduledTask<Task>> tasks) throws InterruptedException {
+        int start = ThreadLocalRandom.current().nextInt(locals.length);
+        int iteration = 0;
+        while (true) {
+            IntPredicate isActive = active;
+            for (int i = 0; i < locals.length; ++i) {
+                int worker = (start + i) % locals.length;
+                if (!isActive.test(worker)) {
+                    continue;
+                }
+                RingBufferTaskQueue<Task> local = locals[worker];
+                if (tasks.size() > local.capacity()) {
+                    TaskQueue.super.putAll(tasks);
+                    return;
+                }
+                if (local.offer(tasks)) {
+                    return;
+                }
+            }
+            iteration = RingBufferTaskQueue.idle(iteration);
+        }
+    }
+
+    // earliest of the head tasks of the worker's buffer and two others, null when the worker's buffer is empty;
+    // start times are read racily, the task may be taken and reused meanwhile, then the choice is just worse
+    private ScheduledTask<Task> takeEarliest(int worker, int probe) {
+        RingBufferTaskQueue<Task> own = locals[worker];
+        ScheduledTask<Task> head = own.peek();
+        if (head == null || locals.length == 1) {
+            return own.poll();
+        }
+        RingBufferTaskQueue<Task> next = locals[(worker + 1 + probe % (locals.length - 1)) % locals.length];
+        RingBufferTaskQueue<Task> random = locals[ThreadLocalRandom.current().nextInt(locals.length)];
+        RingBufferTaskQueue<Task> earliest = own;
+        long earliestStart = head.startTime;
+        ScheduledTask<Task> candidate = next.peek();
+        if (candidate != null && candidate.startTime - earliestStart < 0) {
+            earliest = next;
+            earliestStart = candidate.startTime;
+        }
+        candidate = random.peek();
+        if (candidate != null && candidate.startTime - earliestStart < 0) {
+            earliest = random;
+        }
+        ScheduledTask<Task> task = earliest.poll();
+        return task != null ? task : own.poll();
+    }
+
+    private ScheduledTask<Task> take(int worker, int probe) throws InterruptedException {
+        ScheduledTask<Task> earliest = takeEarliest(worker, probe);
+        if (earliest != null) {
+            return earliest;
+        }
+        int iteration = 0;
+        while (true) {
+            // read finalizer before polling, so no task put before it can be missed
+            ScheduledTask<Task> last = finalizer;
+            for (int i = 0; i < locals.length; ++i) {
+                ScheduledTask<Task> task = locals[(worker + i) % locals.length].poll();
+                if (task != null) {
+                    return task;
+                }
+            }
+            if (last != null) {
+                return last;
+            }
+            iteration = RingBufferTaskQueue.idle(iteration);
+        }
+    }
+
+    // tasks already in buffers of workers which became inactive are moved to active ones while there is room
+    @Override
+    public synchronized void setActiveWorkers(IntPredicate active) {
+        this.active = active;
+        for (int worker = 0; worker < locals.length; ++worker) {
+            if (active.test(worker)) {
+                continue;
+            }
+            ScheduledTask<Task> task;
+            while ((task = locals[worker].poll()) != null) {
+                if (!offer(task)) {
+                    // no room in active buffers, the task is put back; a producer which hasn't seen the change
+                    // yet may take the freed slot, then it waits for room anywhere
+                    while (!locals[worker].offer(task) && !offer(task)) {
+                        Thread.onSpinWait();
+                    }
+                    return;
+                }
+            }
+        }
+    }
+
+    @Override
+    public ScheduledTask<Task> take() throws InterruptedException {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        return take(random.nextInt(locals.length), random.nextInt(locals.length));
+    }
+
+    @Override
+    public TaskQueue<Task> forWorker(int worker) {
+        int index = worker % locals.length;
+        return new TaskQueue<>() {
+            // the view is used by a single worker, so the round-robin position needs no synchronization
+            private int probe;
+
+            @Override
+            public void put(ScheduledTask<Task> task) throws InterruptedException {
+                WorkStealingTaskQueue.this.put(task);
+            }
+
+            @Override
+            public void putAll(List<ScheduledTask<Task>> tasks) throws InterruptedException {
+                WorkStealingTaskQueue.this.putAll(tasks);
+            }
+
+            @Override
+            public ScheduledTask<Task> take() throws InterruptedException {
+                return WorkStealingTaskQueue.this.take(index, probe++ & Integer.MAX_VALUE);
+            }
+
+            @Override
+            public void setActiveWorkers(IntPredicate active) {
+                WorkStealingTaskQueue.this.setActiveWorkers(active);
+            }
+
+            @Override
+            public int clear() {
+                return WorkStealingTaskQueue.this.clear();
+            }
+
+            @Override
+            public int size() {
+                return WorkStealingTaskQueue.this.size();
+            }
+        };
+    }
+
+    @Override
+    public int clear() {
+        int dropped = 0;
+        for (RingBufferTaskQueue<Task> local : locals) {
+            dropped += local.clear();
+        }
+        return dropped;
+    }
+
+    // tasks in the buffer of the worker
+    int size(int worker) {
+        return locals[worker].size();
+    }
+
+    @Override
+    public int size() {
+        int size = 0;
+        for (RingBufferTaskQueue<Task> local : locals) {
+            size += local.size();
+        }
+        return size;
+    }
+}
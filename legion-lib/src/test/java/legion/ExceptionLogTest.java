@@ -0,0 +1,94 @@
+/*
+ * Copyright (c) 2015, IponWeb (http://www.iponweb.com)
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the <organization> nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package legion;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletionException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+public class ExceptionLogTest {
+    @Test
+    public void testCountsAndSamples() {
+        ExceptionLog log = new ExceptionLog(3, 60000, 2);
+        for (int i = 0; i < 10; ++i) {
+            log.record(new IOException("connection refused"));
+        }
+        // messages with request ids are not kinds of their own
+        for (int i = 0; i < 5; ++i) {
+            log.record(new IOException("request " + i + " failed"));
+        }
+        IllegalStateException last = new IllegalStateException();
+        log.record(last);
+
+        Map<String, Long> counts = log.getCounts();
+        assertEquals(2, counts.size());
+        assertEquals(15, (long) counts.get("java.io.IOException"));
+        assertEquals(1, (long) counts.get("java.lang.IllegalStateException"));
+        // 3 exceptions are sampled in the interval, the ring keeps the latest 2 of them
+        List<ExceptionLog.Sample> samples = log.getSamples();
+        assertEquals(2, samples.size());
+        assertEquals("java.io.IOException: connection refused", samples.get(1).kind);
+    }
+
+    @Test
+    public void testIntervals() throws InterruptedException {
+        ExceptionLog log = new ExceptionLog(1, 50, 10);
+        log.record(new IOException());
+        log.record(new IOException());
+        Thread.sleep(60);
+        IOException next = new IOException();
+        log.record(next);
+        List<ExceptionLog.Sample> samples = log.getSamples();
+        assertEquals(2, samples.size());
+        assertSame(next, samples.get(1).exception);
+    }
+
+    @Test
+    public void testKind() {
+        String message = new String(new char[200]).replace('\0', 'x');
+        assertEquals(
+                "java.io.IOException: " + message.substring(0, ExceptionLog.MESSAGE_PREFIX_LENGTH),
+                ExceptionLog.kind(new IOException(message))
+        );
+        // async loaders fail stages with wrapped exceptions
+        assertEquals(
+                "java.io.IOException: timeout",
+                ExceptionLog.kind(new CompletionException(new IOException("timeout")))
+        );
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testWrongInterval() {
+        new ExceptionLog(1, 0, 10);
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright (c) 2015, IponWeb (http://www.iponweb.com)
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the <organization> nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package legion;
+
+import com.codahale.metrics.MetricRegistry;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class IntervalLogTest {
+    @Test
+    public void testIntervals() {
+        Metrics metrics = new Metrics(new MetricRegistry());
+        IntervalLog log = new IntervalLog(3, metrics);
+        log.cut(0);
+        for (int i = 1; i <= 5; ++i) {
+            for (int j = 0; j < i; ++j) {
+                metrics.queriesHistogram.update(i * 1000000L);
+            }
+            log.cut(i * 1000);
+        }
+        // late cut is ignored
+        log.cut(4500);
+
+        List<IntervalLog.Interval> intervals = log.get(Long.MIN_VALUE, Long.MAX_VALUE);
+        assertEquals(3, intervals.size());
+        for (int i = 0; i < 3; ++i) {
+            IntervalLog.Interval interval = intervals.get(i);
+            assertEquals((i + 2) * 1000, interval.start);
+            assertEquals((i + 3) * 1000, interval.end);
+            LatencyHistogram.Snapshot queries = interval.histograms.get(Metrics.QUERIES_METRIC_NAME);
+            assertEquals(i + 3, queries.getCount());
+            long expected = (i + 3) * 1000000L;
+            assertTrue(queries.getMin() <= expected && expected <= queries.getMax() * 1.01);
+            assertEquals(0, interval.histograms.get(Metrics.RESPONSES_METRIC_NAME).getCount());
+        }
+
+        assertEquals(2, log.get(3500, 5000).size());
+        assertEquals(1, log.get(4999, 6000).size());
+        assertEquals(0, log.get(0, 2000).size());
+    }
+
+    @Test
+    public void testSnapshotMinus() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.update(10);
+        histogram.update(1000000);
+        LatencyHistogram.Snapshot first = histogram.getSnapshot();
+        histogram.update(500);
+        histogram.update(1000000);
+        LatencyHistogram.Snapshot diff = histogram.getSnapshot().minus(first);
+        assertEquals(2, diff.getCount());
+        assertEquals(2, diff.getBucketValues().length);
+        assertTrue(diff.getValue(0.5) >= 500 && diff.getValue(0.5) <= 505);
+        assertTrue(diff.getValue(1) >= 1000000);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testWrongCapacity() {
+        new IntervalLog(0, new Metrics(new MetricRegistry()));
+    }
+}
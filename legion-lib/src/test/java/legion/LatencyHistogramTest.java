@@ -0,0 +1,118 @@
+/*
+ * Copyright (c) 2015, IponWeb (http://www.iponweb.com)
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the <organization> nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package legion;
+
+import com.codahale.metrics.Snapshot;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class LatencyHistogramTest {
+    @Test
+    public void testBuckets() {
+        for (int digits = 1; digits <= LatencyHistogram.MAX_SIGNIFICANT_DIGITS; ++digits) {
+            int bits = 64 - Long.numberOfLeadingZeros((long) Math.pow(10, digits) - 1);
+            double precision = Math.pow(10, -digits);
+            int previous = -1;
+            for (long value = 0; value < 10000000; value += 7) {
+                int bucket = LatencyHistogram.bucket(bits, value);
+                assertTrue(bucket >= previous);
+                assertTrue(LatencyHistogram.bucketMin(bits, bucket) <= value);
+                assertTrue(value <= LatencyHistogram.bucketMax(bits, bucket));
+                assertTrue(LatencyHistogram.bucketMax(bits, bucket) <= value * (1 + precision));
+                previous = bucket;
+            }
+            int last = LatencyHistogram.bucketCount(bits) - 1;
+            assertEquals(last, LatencyHistogram.bucket(bits, Long.MAX_VALUE));
+            assertEquals(Long.MAX_VALUE, LatencyHistogram.bucketMax(bits, last));
+            assertEquals(0, LatencyHistogram.bucket(bits, -5));
+        }
+    }
+
+    @Test
+    public void testExtremes() {
+        LatencyHistogram histogram = new LatencyHistogram(3);
+        histogram.update(123456789);
+        histogram.update(17);
+        histogram.update(1000);
+        LatencyHistogram.Snapshot snapshot = histogram.getSnapshot();
+        assertEquals(17, snapshot.getMin());
+        assertEquals(123456789, snapshot.getMax());
+        assertEquals(123456789, snapshot.getValue(1));
+        assertEquals((123456789 + 17 + 1000) / 3.0, snapshot.getMean(), 1e-6);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testWrongPrecision() {
+        new LatencyHistogram(5);
+    }
+
+    @Test
+    public void testPercentiles() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 1000; ++i) {
+            histogram.update(i * 1000L);
+        }
+        LatencyHistogram.Snapshot snapshot = histogram.getSnapshot();
+        assertEquals(1000, snapshot.getCount());
+        assertEquals(500000, snapshot.getValue(0.5), 500000 * 0.01);
+        assertEquals(990000, snapshot.getValue(0.99), 990000 * 0.01);
+        assertEquals(1000000, snapshot.getValue(1));
+    }
+
+    @Test
+    public void testWindow() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 0; i < 1000; ++i) {
+            histogram.update(1000000);
+        }
+        LatencyHistogram.Snapshot first = histogram.getSnapshot();
+        for (int i = 0; i < 100; ++i) {
+            histogram.update(10);
+        }
+        LatencyHistogram.Snapshot window = histogram.getSnapshot().minus(first);
+        assertEquals(100, window.getCount());
+        assertEquals(10, window.getValue(0.99));
+        assertEquals(0, histogram.getSnapshot().minus(histogram.getSnapshot()).getValue(0.99));
+    }
+
+    @Test
+    public void testReservoir() {
+        HistogramReservoir reservoir = new HistogramReservoir();
+        for (int i = 1; i <= 100; ++i) {
+            reservoir.update(i);
+        }
+        Snapshot snapshot = reservoir.getSnapshot();
+        assertEquals(100, snapshot.size());
+        assertEquals(1, snapshot.getMin());
+        assertEquals(100, snapshot.getMax());
+        assertEquals(50.5, snapshot.getMean(), 1e-9);
+        assertEquals(99, snapshot.get99thPercentile(), 0);
+    }
+}
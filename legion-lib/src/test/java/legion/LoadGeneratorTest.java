@@ -29,15 +29,34 @@ package legion;
 
 import com.codahale.metrics.MetricRegistry;
 import com.google.common.collect.ImmutableList;
+import legion.runner.ExecutionMode;
 import legion.runner.LoadGenerator;
+import legion.runner.LoadOptions;
+import legion.runner.QueueType;
+import legion.runner.SloTarget;
+import legion.runner.StopMode;
+import legion.runner.TimeoutPolicy;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.util.Collections;
+import java.util.List;
 import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.junit.Assume.assumeFalse;
+import static org.junit.Assume.assumeTrue;
 
 public class LoadGeneratorTest {
     private MetricRegistry metricRegistry;
@@ -79,6 +98,639 @@ public class LoadGeneratorTest {
         assertEquals(100, requests.get());
     }
 
+    @Test
+    public void testQueueTypes() throws InterruptedException {
+        for (QueueType queueType : QueueType.values()) {
+            LoadOptions options = new LoadOptions();
+            options.queueType = queueType;
+            options.queueCapacity = 64;
+            LoadGenerator<Object> loadGenerator = new LoadGenerator<>(-1, 100000, -1, Integer.MAX_VALUE, options, new Metrics(new MetricRegistry()));
+            AtomicInteger requests = new AtomicInteger();
+            Object task = new Object();
+            Generator<Object> generator = () -> task;
+            Loader<Object> loader = t -> requests.incrementAndGet();
+            loadGenerator.doTest(
+                    ImmutableList.of(generator, generator, generator),
+                    ImmutableList.of(loader, loader, loader, loader),
+                    new Properties()
+            );
+            assertEquals(queueType.name(), 100000, requests.get());
+        }
+    }
+
+    @Test
+    public void testLatencyBreakdown() throws InterruptedException {
+        Metrics metrics = new Metrics(metricRegistry);
+        LoadGenerator<Object> loadGenerator = new LoadGenerator<>(-1, 50, -1, Integer.MAX_VALUE, metrics);
+        Object task = new Object();
+        Generator<Object> generator = () -> task;
+        Loader<Object> loader = t -> Thread.sleep(1);
+        loadGenerator.doTest(
+                ImmutableList.of(generator),
+                ImmutableList.of(loader),
+                new Properties()
+        );
+        LatencyHistogram.Snapshot queueWait = metrics.queueWaitHistogram.getSnapshot();
+        assertEquals(50, queueWait.getCount());
+        assertEquals(50, metrics.queriesHistogram.getSnapshot().getCount());
+        // unlimited rate, so tasks wait in the queue behind the single loader
+        assertTrue(queueWait.getMax() >= TimeUnit.MILLISECONDS.toNanos(1));
+        assertTrue(metrics.queriesHistogram.getSnapshot().getMin() >= TimeUnit.MILLISECONDS.toNanos(1));
+        // the loader is the bottleneck
+        long busy = metrics.threadTime("LoadThread-1", Metrics.BUSY_TIME_SUFFIX).getCount();
+        long idle = metrics.threadTime("LoadThread-1", Metrics.IDLE_TIME_SUFFIX).getCount();
+        assertTrue(busy >= 50 * TimeUnit.MILLISECONDS.toNanos(1));
+        assertTrue(busy > idle);
+        assertEquals(50, metrics.schedulerLagHistogram.getSnapshot().getCount());
+        assertTrue(metrics.threadTime("GeneratorThread-1", Metrics.RUNNING_TIME_SUFFIX).getCount() > 0);
+    }
+
+    @Test
+    public void testPregeneration() throws InterruptedException {
+        for (int pregenerate : new int[]{-1, 50}) {
+            LoadOptions options = new LoadOptions();
+            options.pregenerate = pregenerate;
+            Metrics metrics = new Metrics(new MetricRegistry());
+            LoadGenerator<Object> loadGenerator = new LoadGenerator<>(1000, 200, -1, Integer.MAX_VALUE, options, metrics);
+            AtomicLong lastGenerated = new AtomicLong();
+            AtomicLong firstLoaded = new AtomicLong();
+            AtomicInteger requests = new AtomicInteger();
+            Object task = new Object();
+            Generator<Object> generator = () -> {
+                lastGenerated.set(System.nanoTime());
+                return task;
+            };
+            Loader<Object> loader = t -> {
+                firstLoaded.compareAndSet(0, System.nanoTime());
+                requests.incrementAndGet();
+            };
+            loadGenerator.doTest(
+                    ImmutableList.of(generator, generator),
+                    ImmutableList.of(loader),
+                    new Properties()
+            );
+            assertEquals(200, requests.get());
+            if (pregenerate < 0) {
+                assertEquals(200, metrics.pregenerated.get());
+                assertTrue(lastGenerated.get() < firstLoaded.get());
+            } else {
+                assertEquals(50, metrics.pregenerated.get());
+            }
+        }
+    }
+
+    @Test
+    public void testTraceReplay() throws InterruptedException {
+        LoadOptions options = new LoadOptions();
+        options.traceSpeed = 4;
+        LoadGenerator<Integer> loadGenerator = new LoadGenerator<>(-1, -1, 1000, Integer.MAX_VALUE, options, new Metrics(metricRegistry));
+        List<Long> starts = new CopyOnWriteArrayList<>();
+        TimestampedGenerator<Integer> generator = new TimestampedGenerator<Integer>() {
+            private int task = -1;
+
+            @Override
+            public Integer generate() {
+                return ++task < 10 ? task : null;
+            }
+
+            @Override
+            public long offset() {
+                return task * TimeUnit.MILLISECONDS.toNanos(40);
+            }
+        };
+        Loader<Integer> loader = t -> starts.add(System.nanoTime());
+        loadGenerator.doTest(
+                ImmutableList.of(generator),
+                ImmutableList.of(loader),
+                new Properties()
+        );
+        assertEquals(10, starts.size());
+        // 360ms of the trace in 90ms, QPS limit doesn't apply
+        long duration = starts.get(9) - starts.get(0);
+        assertTrue(duration >= TimeUnit.MILLISECONDS.toNanos(80));
+        assertTrue(duration < TimeUnit.MILLISECONDS.toNanos(250));
+    }
+
+    @Test
+    public void testWarmup() throws InterruptedException {
+        LoadOptions options = new LoadOptions();
+        options.warmupSeconds = -1;
+        options.warmupIntervalMs = 50;
+        options.maxWarmupSeconds = 1;
+        Metrics metrics = new Metrics(metricRegistry);
+        LoadGenerator<Object> loadGenerator = new LoadGenerator<>(-1, 600, 500, Integer.MAX_VALUE, options, metrics);
+        Object task = new Object();
+        Generator<Object> generator = () -> task;
+        Loader<Object> loader = t -> {
+        };
+        long start = System.nanoTime();
+        loadGenerator.doTest(
+                ImmutableList.of(generator),
+                ImmutableList.of(loader),
+                new Properties()
+        );
+        long total = (System.nanoTime() - start) / 1000000;
+        Metrics.Warmup warmup = metrics.getWarmup();
+        long warmupQueries = warmup.histograms.get(Metrics.QUERIES_METRIC_NAME).getCount();
+        assertTrue(warmupQueries > 0);
+        assertEquals(600, warmupQueries + metrics.measuredSnapshot(Metrics.QUERIES_METRIC_NAME).getCount());
+        assertEquals(600, warmup.success + metrics.measuredCount(metrics.success));
+        try {
+            metrics.measuredCount(metricRegistry.meter("other"));
+            fail();
+        } catch (IllegalArgumentException e) {
+            // warm-up values are kept only for the engine meters
+        }
+        assertTrue(warmup.duration <= 1100);
+        assertTrue(metrics.duration.getValue() + warmup.duration <= total);
+    }
+
+    @Test
+    public void testStopDrain() throws InterruptedException {
+        LoadOptions options = new LoadOptions();
+        options.queueCapacity = 20;
+        Metrics metrics = new Metrics(metricRegistry);
+        LoadGenerator<Object> loadGenerator = new LoadGenerator<>(-1, -1, -1, Integer.MAX_VALUE, options, metrics);
+        Object task = new Object();
+        Generator<Object> generator = () -> task;
+        Loader<Object> loader = t -> sleep(5);
+        loadGenerator.start(ImmutableList.of(generator), ImmutableList.of(loader), new Properties());
+        sleep(100);
+        loadGenerator.interrupt(StopMode.DRAIN, 5000);
+        loadGenerator.join();
+        Metrics.Stop stop = metrics.getStop();
+        assertEquals(StopMode.DRAIN.name(), stop.mode);
+        assertEquals(0, stop.dropped);
+        assertEquals(0, stop.interrupted);
+        // everything scheduled before the stop is run
+        assertEquals(metrics.startLagHistogram.getSnapshot().getCount(), metrics.success.getCount());
+        assertTrue(stop.completed >= options.queueCapacity);
+    }
+
+    @Test
+    public void testStopAbort() throws InterruptedException {
+        LoadOptions options = new LoadOptions();
+        options.queueCapacity = 20;
+        Metrics metrics = new Metrics(metricRegistry);
+        LoadGenerator<Object> loadGenerator = new LoadGenerator<>(-1, -1, -1, Integer.MAX_VALUE, options, metrics);
+        Object task = new Object();
+        Generator<Object> generator = () -> task;
+        Loader<Object> loader = t -> Thread.sleep(60000);
+        loadGenerator.start(ImmutableList.of(generator), ImmutableList.of(loader), new Properties());
+        sleep(100);
+        long start = System.nanoTime();
+        loadGenerator.interrupt(StopMode.ABORT, 100);
+        long duration = (System.nanoTime() - start) / 1000000;
+        loadGenerator.join();
+        Metrics.Stop stop = metrics.getStop();
+        assertEquals(StopMode.ABORT.name(), stop.mode);
+        assertTrue(stop.dropped >= options.queueCapacity - 1);
+        assertEquals(1, stop.inFlight);
+        // the sleeping loader is interrupted after the timeout
+        assertEquals(1, stop.interrupted);
+        assertEquals(0, stop.abandoned);
+        assertTrue(String.format("Unexpected stop duration: %sms", duration), duration < 1000);
+    }
+
+    @Test
+    public void testStopAsyncWhilePacing() throws InterruptedException {
+        LoadOptions options = new LoadOptions();
+        options.queueCapacity = 20;
+        Metrics metrics = new Metrics(metricRegistry);
+        LoadGenerator<Object> loadGenerator = new LoadGenerator<>(-1, -1, 1, Integer.MAX_VALUE, options, metrics);
+        Object task = new Object();
+        Generator<Object> generator = () -> task;
+        AsyncLoader<Object> loader = CompletableFuture::completedFuture;
+        loadGenerator.start(ImmutableList.of(generator), ImmutableList.of(), ImmutableList.of(loader), new Properties());
+        sleep(100);
+        long start = System.nanoTime();
+        // the worker waits for the start time of the second task
+        loadGenerator.interrupt(StopMode.ABORT, 100);
+        long duration = (System.nanoTime() - start) / 1000000;
+        loadGenerator.join();
+        Metrics.Stop stop = metrics.getStop();
+        // the task waiting for its start time is in flight
+        assertEquals(1, stop.inFlight);
+        assertEquals(1, stop.interrupted);
+        assertEquals(0, stop.abandoned);
+        assertTrue(String.format("Unexpected stop duration: %sms", duration), duration < 1000);
+    }
+
+    @Test
+    public void testMaxInFlightMustBePositive() {
+        LoadOptions options = new LoadOptions();
+        options.maxInFlight = 0;
+        try {
+            new LoadGenerator<>(-1, -1, -1, Integer.MAX_VALUE, options, new Metrics(metricRegistry));
+            fail();
+        } catch (IllegalArgumentException e) {
+            // the run would never get a permit
+        }
+    }
+
+    @Test
+    public void testPregenerationRequiresQueriesLimit() {
+        LoadOptions options = new LoadOptions();
+        options.pregenerate = -1;
+        try {
+            new LoadGenerator<>(1000, -1, -1, Integer.MAX_VALUE, options, new Metrics(metricRegistry));
+            fail();
+        } catch (IllegalArgumentException e) {
+            // the whole stream of an endless generator doesn't fit in memory
+        }
+    }
+
+    @Test
+    public void testArrivalProcessRequiresRate() {
+        LoadOptions options = new LoadOptions();
+        options.arrivalProcess = "poisson";
+        try {
+            new LoadGenerator<>(-1, -1, -1, Integer.MAX_VALUE, options, new Metrics(metricRegistry));
+            fail();
+        } catch (IllegalArgumentException e) {
+            // without a rate tasks start as soon as they are generated
+        }
+        new LoadGenerator<>(-1, -1, 100, Integer.MAX_VALUE, options, new Metrics(new MetricRegistry()));
+    }
+
+    @Test
+    public void testAdjustRate() throws InterruptedException {
+        Metrics metrics = new Metrics(metricRegistry);
+        LoadGenerator<Object> loadGenerator = new LoadGenerator<>(-1, 120, 20, Integer.MAX_VALUE, metrics);
+        Object task = new Object();
+        Generator<Object> generator = () -> task;
+        Loader<Object> loader = t -> {
+        };
+        long startTime = System.nanoTime();
+        loadGenerator.start(ImmutableList.of(generator), ImmutableList.of(loader), new Properties());
+        sleep(500);
+        loadGenerator.setRate(200);
+        try {
+            loadGenerator.adjust(Double.NaN, 1);
+            fail();
+        } catch (IllegalArgumentException e) {
+            // neither value is applied
+        }
+        try {
+            loadGenerator.adjust(1000.0, 2);
+            fail();
+        } catch (IllegalArgumentException e) {
+            // there is a single loader worker
+        }
+        loadGenerator.join();
+        long duration = System.nanoTime() - startTime;
+        assertEquals(120, metrics.success.getCount());
+        // 6s at the initial rate
+        assertTrue(String.format("Unexpected test duration: %sms", duration / 1000000), duration < 2000L * 1000000);
+        assertEquals(20, metrics.targetRate.firstEntry().getValue(), 0);
+        assertEquals(200, metrics.targetRate.lastEntry().getValue(), 0);
+    }
+
+    @Test
+    public void testAdjustActiveLoaders() throws InterruptedException {
+        LoadOptions options = new LoadOptions();
+        options.loaderConcurrency = 4;
+        options.activeLoaders = 1;
+        Metrics metrics = new Metrics(metricRegistry);
+        LoadGenerator<Object> loadGenerator = new LoadGenerator<>(-1, -1, -1, Integer.MAX_VALUE, options, metrics);
+        Object task = new Object();
+        Generator<Object> generator = () -> task;
+        Set<String> threads = ConcurrentHashMap.newKeySet();
+        Loader<Object> loader = t -> {
+            threads.add(Thread.currentThread().getName());
+            sleep(5);
+        };
+        loadGenerator.start(ImmutableList.of(generator), ImmutableList.of(loader), new Properties());
+        sleep(200);
+        assertEquals(Collections.singleton("LoadThread-1"), threads);
+        assertEquals(1, (int) metrics.activeLoaders.getValue());
+        loadGenerator.setActiveLoaders(4);
+        sleep(200);
+        assertEquals(4, threads.size());
+        try {
+            loadGenerator.setActiveLoaders(5);
+            fail();
+        } catch (IllegalArgumentException e) {
+            // only workers created at start can be activated
+        }
+        try {
+            loadGenerator.setRate(100);
+            fail();
+        } catch (IllegalStateException e) {
+            // rate is not limited
+        }
+        // inactive workers exit with the rest
+        loadGenerator.setActiveLoaders(2);
+        loadGenerator.interrupt(StopMode.ABORT, 5000);
+        loadGenerator.join();
+        assertEquals(0, metrics.getStop().interrupted);
+    }
+
+    @Test
+    public void testTaskTags() throws InterruptedException {
+        Metrics metrics = new Metrics(metricRegistry);
+        LoadGenerator<Integer> loadGenerator = new LoadGenerator<>(-1, 300, -1, Integer.MAX_VALUE, metrics);
+        loadGenerator.setTaskClassifier(new TaskClassifier<>() {
+            @Override
+            public List<String> tags() {
+                return ImmutableList.of("read", "write");
+            }
+
+            @Override
+            public int tag(Integer task) {
+                // every third task is not classified
+                return task % 3 == 2 ? -1 : task % 3;
+            }
+        });
+        AtomicInteger counter = new AtomicInteger();
+        Generator<Integer> generator = counter::getAndIncrement;
+        Loader<Integer> loader = t -> {
+            if (t % 3 == 1 && t % 2 == 0) {
+                throw new Exception("write failed");
+            }
+        };
+        loadGenerator.doTest(
+                ImmutableList.of(generator),
+                ImmutableList.of(loader),
+                new Properties()
+        );
+        List<Metrics.Tag> tags = metrics.getTags();
+        assertEquals("read", tags.get(0).name);
+        assertEquals(100, tags.get(0).queries.getSnapshot().getCount());
+        assertEquals(100, tags.get(0).responses.getSnapshot().getCount());
+        assertEquals(0, tags.get(0).exceptions.sum());
+        assertEquals(100, tags.get(0).success.sum());
+        assertEquals(100, tags.get(1).queries.getSnapshot().getCount());
+        assertEquals(50, tags.get(1).exceptions.sum());
+        assertEquals(300, metrics.queries.getCount());
+        assertEquals(50, metrics.exceptions.getCount());
+        // task types are cut into intervals with the engine recorders
+        for (IntervalLog.Interval interval : loadGenerator.getIntervals().get(Long.MIN_VALUE, Long.MAX_VALUE)) {
+            assertTrue(interval.histograms.containsKey(".tags.write.queries"));
+        }
+        try {
+            metrics.setTags(ImmutableList.of("search"));
+            fail();
+        } catch (IllegalStateException e) {
+            // the test is already started
+        }
+    }
+
+    @Test
+    public void testAsyncLoaderReturnsNull() throws InterruptedException {
+        LoadOptions options = new LoadOptions();
+        options.maxInFlight = 2;
+        Metrics metrics = new Metrics(metricRegistry);
+        LoadGenerator<Object> loadGenerator = new LoadGenerator<>(-1, 10, -1, Integer.MAX_VALUE, options, metrics);
+        Object task = new Object();
+        Generator<Object> generator = () -> task;
+        AsyncLoader<Object> loader = t -> null;
+        loadGenerator.doTest(
+                ImmutableList.of(generator),
+                ImmutableList.of(),
+                ImmutableList.of(loader),
+                new Properties()
+        );
+        // permits are released, so the test finishes
+        assertEquals(10, metrics.exceptions.getCount());
+        assertEquals(0, metrics.success.getCount());
+    }
+
+    @Test
+    public void testTaskTimeout() throws InterruptedException {
+        LoadOptions options = new LoadOptions();
+        options.taskTimeoutMs = 50;
+        options.timeoutPolicy = TimeoutPolicy.CAP;
+        Metrics metrics = new Metrics(metricRegistry);
+        LoadGenerator<Integer> loadGenerator = new LoadGenerator<>(-1, 10, -1, Integer.MAX_VALUE, options, metrics);
+        AtomicInteger counter = new AtomicInteger();
+        Generator<Integer> generator = counter::getAndIncrement;
+        // every other task hangs until it is interrupted
+        Loader<Integer> loader = t -> {
+            if (t % 2 == 0) {
+                Thread.sleep(60000);
+            }
+        };
+        long startTime = System.nanoTime();
+        loadGenerator.doTest(ImmutableList.of(generator), ImmutableList.of(loader), new Properties());
+        long duration = (System.nanoTime() - startTime) / 1000000;
+        assertTrue(String.format("Unexpected test duration: %sms", duration), duration < 5000);
+        assertEquals(5, metrics.timeouts.getCount());
+        assertEquals(5, metrics.success.getCount());
+        assertEquals(0, metrics.exceptions.getCount());
+        assertEquals(10, metrics.queries.getCount());
+        // latency of timed out tasks is capped at the timeout, up to the histogram precision
+        assertTrue(metrics.queriesHistogram.getSnapshot().getMax() < TimeUnit.MILLISECONDS.toNanos(51));
+    }
+
+    @Test
+    public void testAsyncTaskTimeout() throws InterruptedException {
+        LoadOptions options = new LoadOptions();
+        options.taskTimeoutMs = 50;
+        options.timeoutPolicy = TimeoutPolicy.EXCLUDE;
+        Metrics metrics = new Metrics(metricRegistry);
+        LoadGenerator<Integer> loadGenerator = new LoadGenerator<>(-1, 10, -1, Integer.MAX_VALUE, options, metrics);
+        AtomicInteger counter = new AtomicInteger();
+        Generator<Integer> generator = counter::getAndIncrement;
+        // every other request never completes
+        AsyncLoader<Integer> loader = t -> t % 2 == 0
+                ? new CompletableFuture<>()
+                : CompletableFuture.completedFuture(t);
+        loadGenerator.doTest(
+                ImmutableList.of(generator),
+                ImmutableList.of(),
+                ImmutableList.of(loader),
+                new Properties()
+        );
+        assertEquals(5, metrics.timeouts.getCount());
+        assertEquals(5, metrics.success.getCount());
+        assertEquals(0, metrics.exceptions.getCount());
+        // timed out requests are not in the latency histograms
+        assertEquals(5, metrics.queries.getCount());
+        assertEquals(10, metrics.completed.sum());
+    }
+
+    @Test
+    public void testRateController() throws InterruptedException {
+        LoadOptions options = new LoadOptions();
+        options.slo = new SloTarget();
+        options.slo.intervalMs = 200;
+        options.slo.initialRate = 50;
+        Metrics metrics = new Metrics(metricRegistry);
+        LoadGenerator<Object> loadGenerator = new LoadGenerator<>(2, -1, -1, Integer.MAX_VALUE, options, metrics);
+        Object task = new Object();
+        Generator<Object> generator = () -> task;
+        Loader<Object> loader = t -> {
+        };
+        loadGenerator.doTest(
+                ImmutableList.of(generator),
+                ImmutableList.of(loader),
+                new Properties()
+        );
+        // fast loader always meets SLO, so rate only grows
+        assertEquals(50, metrics.targetRate.firstEntry().getValue(), 0);
+        assertTrue(metrics.targetRate.size() > 3);
+        assertTrue(metrics.targetRate.lastEntry().getValue() > 200);
+    }
+
+    @Test
+    public void testLoaderConcurrency() throws InterruptedException {
+        checkLoaderConcurrency(ExecutionMode.PLATFORM_THREADS);
+    }
+
+    @Test
+    public void testLoaderConcurrencyVirtualThreads() throws InterruptedException {
+        // virtual threads need Java 21, the test is skipped on older runtimes
+        assumeTrue(ExecutionMode.VIRTUAL_THREADS.isSupported());
+        checkLoaderConcurrency(ExecutionMode.VIRTUAL_THREADS);
+    }
+
+    @Test
+    public void testVirtualThreadsNotSupported() {
+        assumeFalse(ExecutionMode.VIRTUAL_THREADS.isSupported());
+        LoadOptions options = new LoadOptions();
+        options.executionMode = ExecutionMode.VIRTUAL_THREADS;
+        try {
+            new LoadGenerator<>(-1, 1000, -1, Integer.MAX_VALUE, options, new Metrics(new MetricRegistry()));
+            fail();
+        } catch (IllegalStateException e) {
+            // platform threads are not used instead
+        }
+    }
+
+    private void checkLoaderConcurrency(ExecutionMode mode) throws InterruptedException {
+        LoadOptions options = new LoadOptions();
+        options.executionMode = mode;
+        options.loaderConcurrency = 100;
+        LoadGenerator<Object> loadGenerator = new LoadGenerator<>(-1, 1000, -1, Integer.MAX_VALUE, options, new Metrics(new MetricRegistry()));
+        AtomicInteger requests = new AtomicInteger();
+        AtomicInteger inits = new AtomicInteger();
+        AtomicInteger closes = new AtomicInteger();
+        Object task = new Object();
+        Generator<Object> generator = () -> task;
+        Loader<Object> loader = new Loader<>() {
+            @Override
+            public void init(Properties props, MetricRegistry registry) {
+                assertEquals("0", props.getProperty("loaderIndex"));
+                inits.incrementAndGet();
+            }
+
+            @Override
+            public void run(Object task) {
+                sleep(40);
+                requests.incrementAndGet();
+            }
+
+            @Override
+            public void close() {
+                closes.incrementAndGet();
+            }
+        };
+        long startTime = System.nanoTime();
+        loadGenerator.doTest(
+                ImmutableList.of(generator),
+                ImmutableList.of(loader),
+                new Properties()
+        );
+        long duration = System.nanoTime() - startTime;
+        assertEquals(1000, requests.get());
+        assertEquals(1, inits.get());
+        assertEquals(1, closes.get());
+        assertTrue(
+                String.format("Unexpected test duration in %s mode: %sms", mode, duration / 1000000),
+                duration < 1000L * 1000000 && duration > 390 * 1000000
+        );
+    }
+
+    @Test
+    public void testAsyncLoader() throws InterruptedException {
+        LoadOptions options = new LoadOptions();
+        options.maxInFlight = 100;
+        Metrics metrics = new Metrics(metricRegistry);
+        LoadGenerator<Object> loadGenerator = new LoadGenerator<>(-1, 1000, -1, Integer.MAX_VALUE, options, metrics);
+        ScheduledExecutorService executor = Executors.newScheduledThreadPool(4);
+        AtomicInteger inFlight = new AtomicInteger();
+        AtomicInteger maxInFlight = new AtomicInteger();
+        AtomicInteger requests = new AtomicInteger();
+        Object task = new Object();
+        Generator<Object> generator = () -> task;
+        AsyncLoader<Object> loader = t -> {
+            int current = inFlight.incrementAndGet();
+            maxInFlight.accumulateAndGet(current, Math::max);
+            CompletableFuture<Object> result = new CompletableFuture<>();
+            executor.schedule(() -> {
+                inFlight.decrementAndGet();
+                if (requests.incrementAndGet() % 10 == 0) {
+                    result.completeExceptionally(new RuntimeException("Expected"));
+                } else {
+                    result.complete(t);
+                }
+            }, 40, TimeUnit.MILLISECONDS);
+            return result;
+        };
+        long startTime = System.nanoTime();
+        loadGenerator.doTest(
+                ImmutableList.of(generator),
+                ImmutableList.of(),
+                ImmutableList.of(loader),
+                new Properties()
+        );
+        long duration = System.nanoTime() - startTime;
+        executor.shutdown();
+        assertEquals(1000, requests.get());
+        assertEquals(900, metrics.success.getCount());
+        assertEquals(100, metrics.exceptions.getCount());
+        assertEquals(1000, metrics.queries.getCount());
+        assertTrue("Too many requests in flight: " + maxInFlight.get(), maxInFlight.get() <= 100);
+        assertTrue(
+                String.format("Unexpected test duration: %sms", duration / 1000000),
+                duration < 1000L * 1000000 && duration > 390 * 1000000
+        );
+    }
+
+    @Test
+    public void testBatchGenerator() throws InterruptedException {
+        LoadGenerator<Integer> loadGenerator = new LoadGenerator<>(-1, 1000, 2000, Integer.MAX_VALUE, new Metrics(metricRegistry));
+        AtomicInteger generated = new AtomicInteger();
+        AtomicInteger batches = new AtomicInteger();
+        Generator<Integer> generator = new Generator<>() {
+            @Override
+            public Integer generate() {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public int batchSize() {
+                return 64;
+            }
+
+            @Override
+            public int generate(List<Integer> batch, int count) {
+                batches.incrementAndGet();
+                for (int i = 0; i < count; ++i) {
+                    batch.add(generated.incrementAndGet());
+                }
+                return count;
+            }
+        };
+        AtomicInteger requests = new AtomicInteger();
+        Loader<Integer> loader = t -> requests.incrementAndGet();
+        long startTime = System.nanoTime();
+        loadGenerator.doTest(
+                ImmutableList.of(generator, generator),
+                ImmutableList.of(loader, loader),
+                new Properties()
+        );
+        long duration = System.nanoTime() - startTime;
+        assertEquals(1000, requests.get());
+        assertEquals(1000, generated.get());
+        assertTrue("Unexpected number of batches: " + batches.get(), batches.get() <= 18);
+        assertTrue(
+                String.format("Unexpected test duration: %sms", duration / 1000000),
+                duration < 700L * 1000000 && duration > 450 * 1000000
+        );
+    }
+
     @Test
     public void testLimitTime() throws InterruptedException {
         LoadGenerator<Object> loadGenerator = new LoadGenerator<>(2, -1, -1, Integer.MAX_VALUE, new Metrics(metricRegistry));
@@ -160,4 +812,25 @@ public class LoadGeneratorTest {
                 duration < 2200L * 1000000 && duration > 1900 * 1000000
         );
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testResponsesIncludeBacklog() throws InterruptedException {
+        Metrics metrics = new Metrics(metricRegistry);
+        LoadGenerator<Object> loadGenerator = new LoadGenerator<>(-1, 20, 100, Integer.MAX_VALUE, metrics);
+        Object task = new Object();
+        Generator<Object> generator = () -> task;
+        Loader<Object> loader = t -> sleep(40);
+        loadGenerator.doTest(
+                ImmutableList.of(generator),
+                ImmutableList.of(loader),
+                new Properties()
+        );
+        assertEquals(20, metrics.responses.getCount());
+        long serviceMax = metrics.queries.getSnapshot().getMax();
+        long responseMax = metrics.responses.getSnapshot().getMax();
+        assertTrue(
+                String.format("Unexpected response time: %sms (service time: %sms)", responseMax / 1000000, serviceMax / 1000000),
+                responseMax > 500L * 1000000 && serviceMax < 200L * 1000000
+        );
+    }
+}
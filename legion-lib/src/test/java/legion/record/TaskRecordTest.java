@@ -0,0 +1,129 @@
+/*
+ * Copyright (c) 2015, IponWeb (http://www.iponweb.com)
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the <organization> nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package legion.record;
+
+import legion.Generator;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class TaskRecordTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static List<String> replay(ReplayGenerator<String> generator) throws Exception {
+        List<String> tasks = new ArrayList<>();
+        String task;
+        while ((task = generator.generate()) != null) {
+            tasks.add(task);
+        }
+        generator.close();
+        return tasks;
+    }
+
+    private static String task(int i) {
+        // variable length, so records don't fill regions evenly
+        StringBuilder builder = new StringBuilder("task-").append(i);
+        for (int j = 0; j < i % 13; ++j) {
+            builder.append('#');
+        }
+        return builder.toString();
+    }
+
+    private Path record(int tasks, int regionSize) throws Exception {
+        Path path = folder.newFile().toPath();
+        TaskRecorder<String> recorder = new TaskRecorder<>(path, TaskCodec.utf8(), regionSize);
+        AtomicInteger counter = new AtomicInteger();
+        Generator<String> source = () -> counter.get() < tasks ? task(counter.getAndIncrement()) : null;
+        RecordingGenerator<String> generator = new RecordingGenerator<>(source, recorder);
+        List<String> generated = new ArrayList<>();
+        String task;
+        while ((task = generator.generate()) != null) {
+            generated.add(task);
+        }
+        generator.close();
+        assertEquals(tasks, generated.size());
+        assertEquals(tasks, recorder.getRecords());
+        return path;
+    }
+
+    @Test
+    public void testReplay() throws Exception {
+        for (int regionSize : new int[]{64, 1000, TaskStreamFile.DEFAULT_REGION_SIZE}) {
+            Path path = record(1000, regionSize);
+            List<String> tasks = replay(new ReplayGenerator<>(path, TaskCodec.utf8(), 0, 1, regionSize));
+            assertEquals(1000, tasks.size());
+            for (int i = 0; i < tasks.size(); ++i) {
+                assertEquals(task(i), tasks.get(i));
+            }
+        }
+    }
+
+    @Test
+    public void testShards() throws Exception {
+        Path path = record(1001, 100);
+        for (int shard = 0; shard < 3; ++shard) {
+            List<String> tasks = replay(new ReplayGenerator<>(path, TaskCodec.utf8(), shard, 3, 100));
+            assertEquals(shard < 2 ? 334 : 333, tasks.size());
+            for (int i = 0; i < tasks.size(); ++i) {
+                assertEquals(task(i * 3 + shard), tasks.get(i));
+            }
+        }
+    }
+
+    @Test
+    public void testBytes() throws Exception {
+        Path path = folder.newFile().toPath();
+        try (TaskRecorder<ByteBuffer> recorder = new TaskRecorder<>(path, TaskCodec.bytes())) {
+            recorder.record(ByteBuffer.wrap(new byte[]{1, 2, 3}));
+            recorder.record(ByteBuffer.allocate(0));
+        }
+        ReplayGenerator<ByteBuffer> generator = new ReplayGenerator<>(path, TaskCodec.bytes());
+        assertEquals(ByteBuffer.wrap(new byte[]{1, 2, 3}), generator.generate());
+        assertEquals(0, generator.generate().remaining());
+        assertNull(generator.generate());
+        generator.close();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testLargeTask() throws IOException {
+        try (TaskRecorder<String> recorder = new TaskRecorder<>(folder.newFile().toPath(), TaskCodec.utf8(), 16)) {
+            recorder.record("more than sixteen bytes");
+        }
+    }
+}
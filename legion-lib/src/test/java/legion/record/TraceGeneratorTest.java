@@ -0,0 +1,79 @@
+/*
+ * Copyright (c) 2015, IponWeb (http://www.iponweb.com)
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the <organization> nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package legion.record;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class TraceGeneratorTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testParseTimestamp() {
+        assertEquals(1500000000000000000L, TraceGenerator.parseTimestamp("1500000000000"));
+        assertEquals(1500000, TraceGenerator.parseTimestamp("1.5"));
+        assertEquals(1234567, TraceGenerator.parseTimestamp("1.2345678"));
+    }
+
+    @Test
+    public void testTrace() throws Exception {
+        for (String name : new String[]{"trace.log", "trace.log.gz"}) {
+            Path path = folder.getRoot().toPath().resolve(name);
+            OutputStream out = Files.newOutputStream(path);
+            if (name.endsWith(".gz")) {
+                out = new GZIPOutputStream(out);
+            }
+            try (PrintStream print = new PrintStream(out)) {
+                print.println("1000.5 GET /a");
+                print.println();
+                print.println("1002 GET /b c");
+                print.println("1010");
+            }
+            TraceGenerator<String> generator = new TraceGenerator<>(path, s -> s);
+            assertEquals("GET /a", generator.generate());
+            assertEquals(0, generator.offset());
+            assertEquals("GET /b c", generator.generate());
+            assertEquals(1500000, generator.offset());
+            assertEquals("", generator.generate());
+            assertEquals(9500000, generator.offset());
+            assertNull(generator.generate());
+            generator.close();
+        }
+    }
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright (c) 2015, IponWeb (http://www.iponweb.com)
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the <organization> nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package legion.runner;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ArrivalProcessTest {
+    private static final int BLOCK = RandomArrivals.BLOCK_SIZE;
+    private static final int SLOTS = 100 * BLOCK;
+
+    private static double[] gaps(ArrivalProcess arrivals) {
+        double[] gaps = new double[SLOTS - 1];
+        for (int i = 1; i < SLOTS; ++i) {
+            gaps[i - 1] = arrivals.position(i) - arrivals.position(i - 1);
+        }
+        return gaps;
+    }
+
+    @Test
+    public void testPoisson() {
+        double[] gaps = gaps(ArrivalProcess.parse("poisson", 42));
+        double sum = 0;
+        double sumSquares = 0;
+        for (double gap : gaps) {
+            assertTrue(gap >= 0);
+            sum += gap;
+            sumSquares += gap * gap;
+        }
+        double mean = sum / gaps.length;
+        double variance = sumSquares / gaps.length - mean * mean;
+        assertEquals(1, mean, 0.01);
+        // exponential gaps have coefficient of variation 1
+        assertEquals(1, Math.sqrt(variance) / mean, 0.05);
+    }
+
+    @Test
+    public void testUniform() {
+        double[] gaps = gaps(ArrivalProcess.parse("uniform:0.5", 42));
+        for (double gap : gaps) {
+            assertTrue(gap > 0.45 && gap < 1.55);
+        }
+    }
+
+    @Test
+    public void testEmpirical() {
+        ArrivalProcess arrivals = ArrivalProcess.parse("empirical:0,0,3", 42);
+        int bursts = 0;
+        for (double gap : gaps(arrivals)) {
+            if (gap == 0) {
+                bursts++;
+            }
+        }
+        assertEquals(2.0 / 3, (double) bursts / SLOTS, 0.02);
+    }
+
+    @Test
+    public void testExactMeanRate() {
+        for (String spec : new String[]{"poisson", "uniform:1", "empirical:1,2,10"}) {
+            ArrivalProcess arrivals = ArrivalProcess.parse(spec, 7);
+            for (int block = 0; block < 100; ++block) {
+                long slot = (long) block * BLOCK;
+                // every block ends exactly where evenly spaced slots would
+                assertTrue(arrivals.position(slot) >= slot);
+                assertTrue(arrivals.position(slot + BLOCK - 1) < slot + BLOCK);
+            }
+        }
+    }
+
+    @Test
+    public void testSeed() {
+        ArrivalProcess first = ArrivalProcess.parse("poisson", 1);
+        ArrivalProcess same = ArrivalProcess.parse("poisson", 1);
+        ArrivalProcess other = ArrivalProcess.parse("poisson", 2);
+        // order of requests does not matter
+        for (int i = SLOTS - 1; i >= 0; --i) {
+            assertEquals(first.position(i), same.position(i), 0);
+        }
+        assertNotEquals(first.position(10), other.position(10), 0);
+    }
+
+    @Test
+    public void testScheduler() {
+        QpsScheduler scheduler = new QpsScheduler(LoadProfile.constant(1000), ArrivalProcess.parse("poisson", 1));
+        long start = scheduler.slotTime(0);
+        long previous = start;
+        for (int i = 1; i < SLOTS; ++i) {
+            long time = scheduler.slotTime(i);
+            assertTrue(time >= previous);
+            previous = time;
+        }
+        assertEquals((SLOTS - 1) * 1000000L, previous - start, 50000000);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testWrongSpec() {
+        ArrivalProcess.parse("uniform", 1);
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright (c) 2015, IponWeb (http://www.iponweb.com)
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the <organization> nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package legion.runner;
+
+import com.google.common.collect.ImmutableList;
+import legion.Generator;
+import legion.Loader;
+import legion.Metrics;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.Properties;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+public class HotPathAllocationTest {
+    private static final int WARM_UP_TASKS = 300000;
+    private static final int MEASURED_TASKS = 200000;
+
+    private static final com.sun.management.ThreadMXBean THREADS =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    private static long allocatedBytes() {
+        return THREADS.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    // counts bytes allocated by the calling thread between WARM_UP_TASKS-th and the last call
+    private static class AllocationProbe {
+        private int calls;
+        private long start;
+        long allocated = -1;
+
+        void call() {
+            calls++;
+            if (calls == WARM_UP_TASKS) {
+                start = allocatedBytes();
+            } else if (calls == WARM_UP_TASKS + MEASURED_TASKS) {
+                allocated = allocatedBytes() - start;
+            }
+        }
+    }
+
+    @Test
+    public void testNoAllocationPerTask() throws InterruptedException {
+        assumeTrue(THREADS.isThreadAllocatedMemorySupported());
+        THREADS.setThreadAllocatedMemoryEnabled(true);
+        for (QueueType queueType : new QueueType[]{QueueType.RING_BUFFER, QueueType.WORK_STEALING}) {
+            LoadOptions options = new LoadOptions();
+            options.queueType = queueType;
+            options.queueCapacity = 1024;
+            LoadGenerator<Object> loadGenerator = new LoadGenerator<>(
+                    -1,
+                    WARM_UP_TASKS + MEASURED_TASKS,
+                    -1,
+                    1,
+                    options,
+                    new Metrics()
+            );
+            Object task = new Object();
+            AllocationProbe generatorProbe = new AllocationProbe();
+            AllocationProbe loaderProbe = new AllocationProbe();
+            Generator<Object> generator = () -> {
+                generatorProbe.call();
+                return task;
+            };
+            Loader<Object> loader = t -> loaderProbe.call();
+            loadGenerator.doTest(ImmutableList.of(generator), ImmutableList.of(loader), new Properties());
+
+            assertEquals(queueType + " generator thread allocates per task", 0, generatorProbe.allocated / MEASURED_TASKS);
+            assertEquals(queueType + " loader thread allocates per task", 0, loaderProbe.allocated / MEASURED_TASKS);
+        }
+    }
+
+    @Test
+    public void testNoAllocationPerArrival() {
+        assumeTrue(THREADS.isThreadAllocatedMemorySupported());
+        THREADS.setThreadAllocatedMemoryEnabled(true);
+        ArrivalProcess arrivals = ArrivalProcess.parse("poisson", 1);
+        AllocationProbe probe = new AllocationProbe();
+        double sum = 0;
+        // far more blocks than cached ones, so blocks are regenerated all the time
+        for (int slot = 0; slot < WARM_UP_TASKS + MEASURED_TASKS; ++slot) {
+            sum += arrivals.position(slot);
+            probe.call();
+        }
+        assertTrue(sum > 0);
+        assertEquals("arrival process allocates per slot", 0, probe.allocated / MEASURED_TASKS);
+    }
+}
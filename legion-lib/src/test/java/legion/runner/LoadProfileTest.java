@@ -0,0 +1,128 @@
+/*
+ * Copyright (c) 2015, IponWeb (http://www.iponweb.com)
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the <organization> nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package legion.runner;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class LoadProfileTest {
+    private static final long SECOND = 1000000000L;
+
+    // numerically integrates rate and checks that elapsedAt inverts the integral
+    private static void checkInverse(LoadProfile profile, double seconds) {
+        long step = SECOND / 1000;
+        double count = 0;
+        long previous = 0;
+        for (long t = step; t <= seconds * SECOND; t += step) {
+            count += (profile.rate(t - step) + profile.rate(t)) / 2 * step / SECOND;
+            long elapsed = profile.elapsedAt(count);
+            assertEquals((double) t, (double) elapsed, step);
+            assertTrue(elapsed >= previous);
+            previous = elapsed;
+        }
+    }
+
+    @Test
+    public void testConstant() {
+        LoadProfile profile = LoadProfile.parse("const:1000");
+        assertEquals(1000, profile.rate(5 * SECOND), 0);
+        assertEquals(SECOND, profile.elapsedAt(1000));
+        assertEquals(2500000, profile.elapsedAt(2.5));
+    }
+
+    @Test
+    public void testRamp() {
+        LoadProfile profile = LoadProfile.parse("ramp:0:1000:10");
+        assertEquals(500, profile.rate(5 * SECOND), 1e-9);
+        assertEquals(1000, profile.rate(20 * SECOND), 0);
+        // 5000 queries are scheduled during the ramp, then 1000 per second
+        assertEquals(10 * SECOND, profile.elapsedAt(5000), 1000);
+        assertEquals(11 * SECOND, profile.elapsedAt(6000), 1000);
+        assertEquals(0, profile.elapsedAt(0));
+        checkInverse(profile, 15);
+        checkInverse(LoadProfile.parse("ramp:1000:100:10"), 15);
+    }
+
+    @Test
+    public void testStep() {
+        LoadProfile profile = LoadProfile.parse("step:100:100:2:350");
+        assertEquals(100, profile.rate(SECOND), 0);
+        assertEquals(200, profile.rate(2 * SECOND), 0);
+        assertEquals(300, profile.rate(5 * SECOND), 0);
+        assertEquals(350, profile.rate(100 * SECOND), 0);
+        assertEquals(2 * SECOND, profile.elapsedAt(200), 1000);
+        assertEquals(6 * SECOND + SECOND / 350, profile.elapsedAt(1201), 1000);
+        checkInverse(profile, 10);
+    }
+
+    @Test
+    public void testSpike() {
+        LoadProfile profile = LoadProfile.parse("spike:100:1000:5:1");
+        assertEquals(100, profile.rate(4 * SECOND), 0);
+        assertEquals(1000, profile.rate(5 * SECOND), 0);
+        assertEquals(100, profile.rate(6 * SECOND), 0);
+        assertEquals(6 * SECOND, profile.elapsedAt(1500), 1000);
+        checkInverse(profile, 10);
+    }
+
+    @Test
+    public void testSine() {
+        LoadProfile profile = LoadProfile.parse("sine:1000:500:4");
+        assertEquals(1500, profile.rate(SECOND), 1e-6);
+        assertEquals(500, profile.rate(3 * SECOND), 1e-6);
+        // whole period schedules exactly mean * period queries
+        assertEquals(4 * SECOND, profile.elapsedAt(4000), 1000);
+        assertEquals(400 * SECOND, profile.elapsedAt(400000), 1000);
+        checkInverse(profile, 10);
+    }
+
+    @Test
+    public void testSchedulerFollowsProfile() {
+        QpsScheduler scheduler = new QpsScheduler(LoadProfile.parse("ramp:0:1000:10"));
+        long first = scheduler.slotTime(0);
+        assertEquals(10 * SECOND, scheduler.slotTime(5000) - first, 1000);
+        assertEquals(11 * SECOND, scheduler.slotTime(6000) - first, 1000);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnknownProfile() {
+        LoadProfile.parse("square:1:2");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testWrongArguments() {
+        LoadProfile.parse("ramp:0:1000");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testZeroFinalRate() {
+        LoadProfile.parse("ramp:1000:0:10");
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright (c) 2015, IponWeb (http://www.iponweb.com)
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the <organization> nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package legion.runner;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+public class PacingTest {
+    private static final int TASKS = 300;
+    private static final long INTERVAL = 1000000;
+
+    private static long[] measureLag(Pacing pacing) throws InterruptedException {
+        long[] lag = new long[TASKS];
+        long start = System.nanoTime() + INTERVAL;
+        for (int i = 0; i < TASKS; ++i) {
+            long startTime = start + i * INTERVAL + (i % 7) * INTERVAL / 7;
+            pacing.awaitStart(startTime);
+            lag[i] = System.nanoTime() - startTime;
+        }
+        Arrays.sort(lag);
+        return lag;
+    }
+
+    @Test
+    public void testPreciseJitter() throws InterruptedException {
+        // on a single CPU the spinning thread shares the core with everything else, so the tail is not measurable
+        assumeTrue(Runtime.getRuntime().availableProcessors() > 1);
+        measureLag(Pacing.PRECISE);
+        long[] lag = measureLag(Pacing.PRECISE);
+        long median = lag[TASKS / 2];
+        long p90 = lag[TASKS * 9 / 10];
+        assertTrue("Task started before its start time: " + lag[0], lag[0] >= 0);
+        assertTrue("Median start lag is too high: " + median + "ns", median < 20000);
+        assertTrue("90% start lag is too high: " + p90 + "ns", p90 < 100000);
+    }
+
+    @Test
+    public void testSleepJitter() throws InterruptedException {
+        long[] lag = measureLag(Pacing.SLEEP);
+        long median = lag[TASKS / 2];
+        assertTrue("Task started before its start time: " + lag[0], lag[0] >= 0);
+        // sleep is rounded up to whole milliseconds
+        assertTrue("Median start lag is too high: " + median + "ns", median < 2 * INTERVAL);
+    }
+}
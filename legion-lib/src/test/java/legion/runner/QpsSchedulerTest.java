@@ -0,0 +1,119 @@
+/*
+ * Copyright (c) 2015, IponWeb (http://www.iponweb.com)
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the <organization> nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package legion.runner;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.Assert.assertEquals;
+
+public class QpsSchedulerTest {
+    private static final int THREADS = 16;
+    private static final int SLOTS_PER_THREAD = 200000;
+
+    @Test
+    public void testSpacing() {
+        QpsScheduler scheduler = new QpsScheduler(1000);
+        long first = scheduler.next();
+        for (int i = 1; i < 10000; ++i) {
+            assertEquals(i * 1000000L, scheduler.next() - first);
+        }
+    }
+
+    @Test
+    public void testRateChangeWithBacklog() {
+        AdjustableProfile profile = new AdjustableProfile(1000);
+        QpsScheduler scheduler = new QpsScheduler(profile);
+        long first = scheduler.slotTime(0);
+        ScheduledTask<Object> backlogged = new ScheduledTask<>(null, scheduler.slotTime(4000));
+        backlogged.slot = 4000;
+        ScheduledTask<Object> ahead = new ScheduledTask<>(null, scheduler.slotTime(6000));
+        ahead.slot = 6000;
+        profile.setRate(5000000000L, 100);
+        // the slot scheduled before the change keeps its start time, the one after it is moved
+        assertEquals(4000000000L, scheduler.startTime(backlogged) - first);
+        assertEquals(15000000000L, scheduler.startTime(ahead) - first);
+        profile.setRate(6000000000L, 2000);
+        assertEquals(4000000000L, scheduler.startTime(backlogged) - first);
+        assertEquals(5000000000L, scheduler.slotTime(5000) - first);
+        assertEquals(6000000000L, scheduler.slotTime(5100) - first);
+        assertEquals(6500000000L, scheduler.slotTime(6100) - first);
+    }
+
+    @Test
+    public void testSpacingUnderContention() throws InterruptedException {
+        int qps = 3000000;
+        double interval = 1e9 / qps;
+        QpsScheduler scheduler = new QpsScheduler(qps);
+        long[][] slots = new long[THREADS][SLOTS_PER_THREAD];
+        CountDownLatch startLatch = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < THREADS; ++t) {
+            long[] threadSlots = slots[t];
+            boolean useReserve = t % 2 == 0;
+            Thread thread = new Thread(() -> {
+                try {
+                    startLatch.await();
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+                int i = 0;
+                while (i < threadSlots.length) {
+                    if (useReserve && threadSlots.length - i >= 8) {
+                        long first = scheduler.reserve(8);
+                        for (int j = 0; j < 8; ++j) {
+                            threadSlots[i++] = scheduler.slotTime(first + j);
+                        }
+                    } else {
+                        threadSlots[i++] = scheduler.next();
+                    }
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        startLatch.countDown();
+        for (Thread t : threads) {
+            t.join();
+        }
+
+        long[] all = new long[THREADS * SLOTS_PER_THREAD];
+        for (int t = 0; t < THREADS; ++t) {
+            System.arraycopy(slots[t], 0, all, t * SLOTS_PER_THREAD, SLOTS_PER_THREAD);
+        }
+        Arrays.sort(all);
+        // every slot is handed out exactly once and the merged schedule is evenly spaced
+        for (int i = 0; i < all.length; ++i) {
+            assertEquals("Slot " + i, (long) (interval * i), all[i] - all[0]);
+        }
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright (c) 2015, IponWeb (http://www.iponweb.com)
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the <organization> nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package legion.runner;
+
+import legion.Metrics;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class RateControllerTest {
+    private static final long MS = 1000000;
+
+    private static RateController controller(SloTarget target) {
+        AdjustableProfile profile = new AdjustableProfile(target.initialRate);
+        return new RateController(target, profile, new QpsScheduler(profile), new Metrics());
+    }
+
+    @Test
+    public void testConvergesToCapacity() {
+        SloTarget target = new SloTarget();
+        target.latencyMs = 10;
+        RateController controller = controller(target);
+        double capacity = 5000;
+        double rate = target.initialRate;
+        for (int i = 0; i < 100; ++i) {
+            // latency explodes when rate is above capacity
+            long latency = rate <= capacity ? 5 * MS : 50 * MS;
+            rate = controller.nextRate(1000, latency, 0, 0, 0);
+        }
+        assertTrue("Rate is too far from capacity: " + rate, rate > capacity * 0.95 && rate < capacity * 1.05);
+    }
+
+    @Test
+    public void testErrorsAndStartLag() {
+        SloTarget target = new SloTarget();
+        target.latencyMs = 10;
+        target.initialRate = 1000;
+        assertEquals(1500, controller(target).nextRate(1000, MS, 0.001, 0, 0), 1e-9);
+        assertEquals(1000 / 1.5, controller(target).nextRate(1000, MS, 0.5, 0, 0), 1e-9);
+        assertEquals(1000 / 1.5, controller(target).nextRate(1000, MS, 0, 20 * MS, 0), 1e-9);
+        // nothing completed and nothing waiting - nothing to learn from
+        assertEquals(1000, controller(target).nextRate(0, 0, 0, 0, 0), 0);
+        // nothing completed while tasks wait - the service is stuck
+        assertEquals(1000 / 1.5, controller(target).nextRate(0, 0, 0, 0, 10), 1e-9);
+    }
+
+    @Test
+    public void testLimits() {
+        SloTarget target = new SloTarget();
+        target.initialRate = 10;
+        target.minRate = 8;
+        target.maxRate = 12;
+        assertEquals(12, controller(target).nextRate(1000, 0, 0, 0, 0), 0);
+        assertEquals(8, controller(target).nextRate(1000, Long.MAX_VALUE, 0, 0, 0), 0);
+    }
+
+    @Test
+    public void testAdjustableProfile() {
+        AdjustableProfile profile = new AdjustableProfile(1000);
+        assertEquals(1000000000L, profile.elapsedAt(1000));
+        profile.setRate(1000000000L, 2000);
+        // 1000 slots were scheduled at the old rate, the rest at the new one
+        assertEquals(1000000000L, profile.elapsedAt(1000));
+        assertEquals(1500000000L, profile.elapsedAt(2000));
+        assertEquals(2000, profile.rate(0), 0);
+        for (double rate : new double[]{0, Double.NaN, Double.POSITIVE_INFINITY}) {
+            try {
+                profile.setRate(2000000000L, rate);
+                fail();
+            } catch (IllegalArgumentException e) {
+                // the profile is left as it was
+            }
+        }
+        assertEquals(1500000000L, profile.elapsedAt(2000));
+    }
+}
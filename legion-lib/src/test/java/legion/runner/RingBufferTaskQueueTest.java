@@ -0,0 +1,150 @@
+/*
+ * Copyright (c) 2015, IponWeb (http://www.iponweb.com)
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the <organization> nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package legion.runner;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class RingBufferTaskQueueTest {
+    @Test
+    public void testCapacity() {
+        RingBufferTaskQueue<Integer> queue = new RingBufferTaskQueue<>(3);
+        for (int i = 0; i < 4; ++i) {
+            assertTrue(queue.offer(new ScheduledTask<>(i, 0)));
+        }
+        assertFalse(queue.offer(new ScheduledTask<>(4, 0)));
+        assertEquals(4, queue.size());
+        for (int i = 0; i < 4; ++i) {
+            assertEquals(Integer.valueOf(i), queue.poll().task);
+        }
+        assertNull(queue.poll());
+        assertEquals(0, queue.size());
+    }
+
+    @Test
+    public void testMultiProducerMultiConsumer() throws InterruptedException {
+        int producers = 4;
+        int consumers = 4;
+        int tasksPerProducer = 250000;
+        RingBufferTaskQueue<Long> queue = new RingBufferTaskQueue<>(1024);
+        LoadThreadsFinalizer<Long> finalizer = new LoadThreadsFinalizer<>(producers, queue);
+        AtomicLong sum = new AtomicLong();
+        AtomicLong count = new AtomicLong();
+
+        List<Thread> threads = new ArrayList<>();
+        for (int p = 0; p < producers; ++p) {
+            threads.add(new Thread(() -> {
+                try {
+                    for (long i = 1; i <= tasksPerProducer; ++i) {
+                        queue.put(new ScheduledTask<>(i, 0));
+                    }
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                } finally {
+                    finalizer.run();
+                }
+            }));
+        }
+        for (int c = 0; c < consumers; ++c) {
+            threads.add(new Thread(() -> {
+                try {
+                    while (true) {
+                        ScheduledTask<Long> task = queue.take();
+                        if (ScheduledTask.isFinalizer(task)) {
+                            ScheduledTask.addFinalizer(queue);
+                            break;
+                        }
+                        sum.addAndGet(task.task);
+                        count.incrementAndGet();
+                    }
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+            }));
+        }
+        threads.forEach(Thread::start);
+        for (Thread t : threads) {
+            t.join();
+        }
+        assertEquals((long) producers * tasksPerProducer, count.get());
+        assertEquals((long) producers * tasksPerProducer * (tasksPerProducer + 1) / 2, sum.get());
+        assertTrue(ScheduledTask.isFinalizer(queue.poll()));
+        assertNull(queue.poll());
+    }
+
+    @Test
+    public void testOfferBatch() {
+        RingBufferTaskQueue<Integer> queue = new RingBufferTaskQueue<>(8);
+        List<ScheduledTask<Integer>> batch = new ArrayList<>();
+        for (int i = 0; i < 5; ++i) {
+            batch.add(new ScheduledTask<>(i, 0));
+        }
+        assertTrue(queue.offer(batch));
+        assertFalse(queue.offer(batch));
+        assertEquals(5, queue.size());
+        for (int i = 0; i < 2; ++i) {
+            assertEquals(Integer.valueOf(i), queue.poll().task);
+        }
+        assertTrue(queue.offer(batch.subList(0, 3)));
+        assertFalse(queue.offer(batch.subList(0, 3)));
+        for (int i : new int[]{2, 3, 4, 0, 1, 2}) {
+            assertEquals(Integer.valueOf(i), queue.poll().task);
+        }
+        assertNull(queue.poll());
+    }
+
+    @Test
+    public void testClear() {
+        RingBufferTaskQueue<Integer> queue = new RingBufferTaskQueue<>(16);
+        for (int i = 0; i < 10; ++i) {
+            assertTrue(queue.offer(new ScheduledTask<>(i, 0)));
+        }
+        queue.clear();
+        assertEquals(0, queue.size());
+        assertNull(queue.poll());
+    }
+
+    @Test(expected = InterruptedException.class)
+    public void testTakeInterrupted() throws InterruptedException {
+        RingBufferTaskQueue<Integer> queue = new RingBufferTaskQueue<>(16);
+        Thread.currentThread().interrupt();
+        try {
+            queue.take();
+        } finally {
+            Thread.interrupted();
+        }
+    }
+}
@@ -0,0 +1,61 @@
+/*
+ * Copyright (c) 2015, IponWeb (http://www.iponweb.com)
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the <organization> nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package legion.runner;
+
+import legion.Metrics;
+import org.junit.Test;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class WarmupDetectorTest {
+    private static final long MS = 1000000;
+
+    @Test
+    public void testStableLoad() {
+        WarmupDetector detector = new WarmupDetector(1000, 60, new Metrics());
+        // JIT and connections make the first intervals slow
+        assertFalse(detector.observe(200, 50 * MS));
+        assertFalse(detector.observe(600, 12 * MS));
+        assertFalse(detector.observe(950, 5 * MS));
+        assertFalse(detector.observe(1000, 4 * MS));
+        assertTrue(detector.observe(980, 4 * MS));
+    }
+
+    @Test
+    public void testUnstableLoad() {
+        WarmupDetector detector = new WarmupDetector(1000, 60, new Metrics());
+        for (int i = 0; i < 10; ++i) {
+            // throughput is stable, latency is not
+            assertFalse(detector.observe(1000, (i % 2 == 0 ? 5 : 10) * MS));
+        }
+        for (int i = 0; i < 10; ++i) {
+            assertFalse(detector.observe(0, 0));
+        }
+    }
+}
@@ -0,0 +1,202 @@
+/*
+ * Copyright (c) 2015, IponWeb (http://www.iponweb.com)
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the <organization> nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package legion.runner;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class WorkStealingTaskQueueTest {
+    @Test
+    public void testSteal() throws InterruptedException {
+        WorkStealingTaskQueue<Integer> queue = new WorkStealingTaskQueue<>(1024, 4);
+        for (int i = 0; i < 100; ++i) {
+            queue.put(new ScheduledTask<>(i, 0));
+        }
+        assertEquals(100, queue.size());
+        // a single worker drains buffers of all other workers
+        TaskQueue<Integer> worker = queue.forWorker(2);
+        long sum = 0;
+        for (int i = 0; i < 100; ++i) {
+            sum += worker.take().task;
+        }
+        assertEquals(99 * 100 / 2, sum);
+        assertEquals(0, queue.size());
+    }
+
+    @Test
+    public void testInactiveWorkers() throws InterruptedException {
+        WorkStealingTaskQueue<Integer> queue = new WorkStealingTaskQueue<>(1024, 4);
+        queue.setActiveWorkers(worker -> worker < 2);
+        for (int i = 0; i < 100; ++i) {
+            queue.put(new ScheduledTask<>(i, 0));
+        }
+        // tasks are put only to buffers of active workers
+        assertEquals(0, queue.size(2) + queue.size(3));
+        assertEquals(100, queue.size(0) + queue.size(1));
+        // and moved out of buffers of workers which became inactive
+        queue.setActiveWorkers(worker -> worker < 1);
+        assertEquals(100, queue.size(0));
+        assertEquals(100, queue.size());
+    }
+
+    @Test
+    public void testFinalizerAfterTasks() throws InterruptedException {
+        WorkStealingTaskQueue<Integer> queue = new WorkStealingTaskQueue<>(1024, 4);
+        for (int i = 0; i < 10; ++i) {
+            queue.put(new ScheduledTask<>(i, 0));
+        }
+        ScheduledTask.addFinalizer(queue);
+        TaskQueue<Integer> worker = queue.forWorker(0);
+        for (int i = 0; i < 10; ++i) {
+            assertTrue(!ScheduledTask.isFinalizer(worker.take()));
+        }
+        // finalizer stays available for every worker
+        assertTrue(ScheduledTask.isFinalizer(worker.take()));
+        assertTrue(ScheduledTask.isFinalizer(queue.forWorker(3).take()));
+    }
+
+    @Test
+    public void testBlockedWorker() throws InterruptedException {
+        int workers = 4;
+        int tasks = 1000;
+        WorkStealingTaskQueue<Integer> queue = new WorkStealingTaskQueue<>(tasks, workers);
+        CountDownLatch blocked = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicLong count = new AtomicLong();
+        AtomicBoolean blocking = new AtomicBoolean();
+        List<Thread> threads = new ArrayList<>();
+        for (int w = 0; w < workers; ++w) {
+            TaskQueue<Integer> worker = queue.forWorker(w);
+            threads.add(new Thread(() -> {
+                try {
+                    while (true) {
+                        ScheduledTask<Integer> task = worker.take();
+                        if (ScheduledTask.isFinalizer(task)) {
+                            break;
+                        }
+                        count.incrementAndGet();
+                        if (blocking.compareAndSet(false, true)) {
+                            // first worker stays busy with its task while others process the rest
+                            blocked.countDown();
+                            release.await();
+                        }
+                    }
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+            }));
+        }
+        threads.forEach(Thread::start);
+        for (int i = 0; i < tasks; ++i) {
+            queue.put(new ScheduledTask<>(i, 0));
+        }
+        assertTrue(blocked.await(10, TimeUnit.SECONDS));
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (count.get() < tasks && System.nanoTime() < deadline) {
+            Thread.sleep(1);
+        }
+        assertEquals(tasks, count.get());
+        release.countDown();
+        ScheduledTask.addFinalizer(queue);
+        for (Thread t : threads) {
+            t.join();
+        }
+    }
+
+    @Test
+    public void testBlockedWorkerWithFutureTasks() throws InterruptedException {
+        int workers = 4;
+        int capacity = 400;
+        int tasks = 1000;
+        long interval = TimeUnit.MILLISECONDS.toNanos(1);
+        WorkStealingTaskQueue<Integer> queue = new WorkStealingTaskQueue<>(capacity, workers);
+        long start = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(50);
+        // the queue is kept full of tasks up to `capacity` intervals ahead, so no buffer gets empty
+        Thread producer = new Thread(() -> {
+            try {
+                for (int i = 0; i < tasks; ++i) {
+                    queue.put(new ScheduledTask<>(i, start + i * interval));
+                }
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+        });
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicBoolean blocking = new AtomicBoolean();
+        AtomicLong count = new AtomicLong();
+        AtomicLong maxLag = new AtomicLong();
+        List<Thread> threads = new ArrayList<>();
+        for (int w = 0; w < workers; ++w) {
+            TaskQueue<Integer> worker = queue.forWorker(w);
+            threads.add(new Thread(() -> {
+                try {
+                    while (true) {
+                        ScheduledTask<Integer> task = worker.take();
+                        if (ScheduledTask.isFinalizer(task)) {
+                            break;
+                        }
+                        if (blocking.compareAndSet(false, true)) {
+                            // the worker is stuck in its loader till the end of the test
+                            release.await();
+                            continue;
+                        }
+                        Pacing.SLEEP.awaitStart(task.startTime);
+                        maxLag.accumulateAndGet(System.nanoTime() - task.startTime, Math::max);
+                        count.incrementAndGet();
+                    }
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+            }));
+        }
+        producer.start();
+        threads.forEach(Thread::start);
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (count.get() < tasks - 1 && System.nanoTime() < deadline) {
+            Thread.sleep(1);
+        }
+        assertEquals(tasks - 1, count.get());
+        release.countDown();
+        producer.join();
+        ScheduledTask.addFinalizer(queue);
+        for (Thread t : threads) {
+            t.join();
+        }
+        // tasks in the buffer of the blocked worker are taken by others by their start time
+        assertTrue("Max start lag: " + maxLag.get() / 1000000 + "ms", maxLag.get() < TimeUnit.MILLISECONDS.toNanos(100));
+    }
+}
@@ -29,9 +29,13 @@ package legion.tool;
 
 import com.codahale.metrics.MetricRegistry;
 import com.google.common.collect.Maps;
+import legion.ExceptionLog;
+import legion.IntervalLog;
 import legion.LoadTest;
 import legion.Metrics;
 import legion.runner.LoadGenerator;
+import legion.runner.LoadOptions;
+import legion.runner.StopMode;
 import org.reflections.Reflections;
 import org.reflections.scanners.SubTypesScanner;
 import org.reflections.util.ConfigurationBuilder;
@@ -71,6 +75,18 @@ public class JarRunner {
     }
 
     public void start(int maxDuration, int queriesLimit, int qpsLimit, int generatorThreadsLimit, String name, Properties properties) {
+        start(maxDuration, queriesLimit, qpsLimit, generatorThreadsLimit, new LoadOptions(), name, properties);
+    }
+
+    public void start(
+            int maxDuration,
+            int queriesLimit,
+            int qpsLimit,
+            int generatorThreadsLimit,
+            LoadOptions options,
+            String name,
+            Properties properties
+    ) {
         if (loadGenerator != null) {
             return;
         }
@@ -84,8 +100,21 @@ public class JarRunner {
         try {
             LoadTest testInstance = test.getConstructor().newInstance();
             testInstance.init(properties, registry);
-            loadGenerator = new LoadGenerator<>(maxDuration, queriesLimit, qpsLimit, generatorThreadsLimit, new Metrics(registry));
-            loadGenerator.start(testInstance.getGenerators(), testInstance.getLoaders(), properties);
+            loadGenerator = new LoadGenerator<>(
+                    maxDuration,
+                    queriesLimit,
+                    qpsLimit,
+                    generatorThreadsLimit,
+                    options,
+                    new Metrics(registry, options.histogramDigits)
+            );
+            loadGenerator.setTaskClassifier(testInstance.getTaskClassifier());
+            loadGenerator.start(
+                    testInstance.getGenerators(),
+                    testInstance.getLoaders(),
+                    testInstance.getAsyncLoaders(),
+                    properties
+            );
         } catch (InstantiationException | IllegalAccessException | NoSuchMethodException | InvocationTargetException e) {
             LOGGER.error("Can't instantiate test", e);
             throw new RuntimeException(e);
@@ -117,6 +146,13 @@ public class JarRunner {
         return loadGenerator.getQpsLimit();
     }
 
+    public LoadOptions getOptions() {
+        if (loadGenerator == null) {
+            throw new IllegalStateException(NOT_STARTED_MESSAGE);
+        }
+        return loadGenerator.getOptions();
+    }
+
     public Metrics getMetrics() {
         if (loadGenerator == null) {
             throw new IllegalStateException(NOT_STARTED_MESSAGE);
@@ -124,6 +160,20 @@ public class JarRunner {
         return loadGenerator.getMetrics();
     }
 
+    public IntervalLog getIntervals() {
+        if (loadGenerator == null) {
+            throw new IllegalStateException(NOT_STARTED_MESSAGE);
+        }
+        return loadGenerator.getIntervals();
+    }
+
+    public ExceptionLog getExceptions() {
+        if (loadGenerator == null) {
+            throw new IllegalStateException(NOT_STARTED_MESSAGE);
+        }
+        return loadGenerator.getExceptions();
+    }
+
     public int getQueriesLimit() {
         if (loadGenerator == null) {
             throw new IllegalStateException(NOT_STARTED_MESSAGE);
@@ -143,6 +193,14 @@ public class JarRunner {
         loadGenerator.interrupt();
     }
 
+    public void interrupt(StopMode mode, long timeoutMs) {
+        loadGenerator.interrupt(mode, timeoutMs);
+    }
+
+    public void adjust(Double rate, Integer activeLoaders) {
+        loadGenerator.adjust(rate, activeLoaders);
+    }
+
     public Map<String, Class<? extends LoadTest>> listTests() {
         URLClassLoader cl = new URLClassLoader(new URL[]{this.jar}, this.getClass().getClassLoader());
         Reflections reflections = new Reflections(
@@ -29,13 +29,17 @@ package legion.tool.agent;
 
 import com.google.common.io.ByteStreams;
 import com.google.gson.Gson;
+import legion.runner.StopMode;
 import legion.tool.agent.data.*;
+import legion.runner.LoadOptions;
 import legion.tool.agent.data.stats.RunStats;
 
 import java.io.*;
 import java.net.HttpURLConnection;
 import java.net.URL;
 import java.net.URLConnection;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Properties;
 
@@ -88,6 +92,20 @@ public class AgentClient {
             int qpsLimit,
             int generatorThreadsLimit,
             Properties properties
+    ) throws IOException {
+        return run(runId, jarId, testId, durationLimit, queriesLimit, qpsLimit, generatorThreadsLimit, new LoadOptions(), properties);
+    }
+
+    public RunInfo run(
+            String runId,
+            String jarId,
+            String testId,
+            int durationLimit,
+            int queriesLimit,
+            int qpsLimit,
+            int generatorThreadsLimit,
+            LoadOptions options,
+            Properties properties
     ) throws IOException {
         RunRequest request = new RunRequest();
         request.runId = runId;
@@ -97,6 +115,7 @@ public class AgentClient {
         request.queriesLimit = queriesLimit;
         request.qpsLimit = qpsLimit;
         request.generatorThreadsLimit = generatorThreadsLimit;
+        request.options = options;
         for (String pName : properties.stringPropertyNames()) {
             request.properties.put(pName, properties.getProperty(pName));
         }
@@ -125,16 +144,75 @@ public class AgentClient {
     }
 
     public RunStats stats(String runId) throws IOException {
-        HttpURLConnection conn = connect("/runs/" + runId);
+        return stats(runId, Collections.emptyList());
+    }
+
+    // values of `percentiles` are returned in HistogramStats.getPercentiles, default ones if the list is empty
+    public RunStats stats(String runId, List<String> percentiles) throws IOException {
+        String query = percentiles.isEmpty() ? "" : "?percentiles=" + String.join(",", percentiles);
+        HttpURLConnection conn = connect("/runs/" + runId + query);
+        conn.connect();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(conn.getInputStream()));
+        RunStats stats = GSON.fromJson(reader, RunStats.class);
+        reader.close();
+        return stats;
+    }
+
+    // intervals of latency histograms which overlap [from, to) milliseconds since start of the test
+    public IntervalsList intervals(String runId, long from, long to, List<String> percentiles) throws IOException {
+        String query = String.format("?from=%s&to=%s", from, to);
+        if (!percentiles.isEmpty()) {
+            query += "&percentiles=" + String.join(",", percentiles);
+        }
+        HttpURLConnection conn = connect("/runs/" + runId + "/intervals" + query);
         conn.connect();
         BufferedReader reader = new BufferedReader(new InputStreamReader(conn.getInputStream()));
+        IntervalsList intervals = GSON.fromJson(reader, IntervalsList.class);
+        reader.close();
+        return intervals;
+    }
+
+    // changes QPS limit and/or number of active loader workers of the running test, null values are kept
+    public RunStats adjust(String runId, Double qps, Integer loaders) throws IOException {
+        List<String> parameters = new ArrayList<>();
+        if (qps != null) {
+            parameters.add("qps=" + qps);
+        }
+        if (loaders != null) {
+            parameters.add("loaders=" + loaders);
+        }
+        HttpURLConnection conn = connect("/runs/" + runId + "/adjust?" + String.join("&", parameters));
+        conn.setRequestMethod("POST");
+        conn.setRequestProperty("Content-Length", "0");
+        conn.connect();
+        if (conn.getResponseCode() != 200) {
+            throw new IOException(new String(ByteStreams.toByteArray(conn.getErrorStream())));
+        }
+        BufferedReader reader = new BufferedReader(new InputStreamReader(conn.getInputStream()));
         RunStats stats = GSON.fromJson(reader, RunStats.class);
         reader.close();
         return stats;
     }
 
     public RunStats interrupt(String runId) throws IOException {
-        HttpURLConnection conn = connect("/interrupt");
+        return interrupt(runId, "");
+    }
+
+    // null mode or timeout means the one from options of the run; the agent stops the run in the background
+    // and returns stats at the moment the stop begins, RunStats.stop is set when it is done
+    public RunStats interrupt(String runId, StopMode mode, Long timeoutMs) throws IOException {
+        List<String> params = new ArrayList<>();
+        if (mode != null) {
+            params.add("mode=" + mode.name().toLowerCase());
+        }
+        if (timeoutMs != null) {
+            params.add("timeout=" + timeoutMs);
+        }
+        return interrupt(runId, params.isEmpty() ? "" : "?" + String.join("&", params));
+    }
+
+    private RunStats interrupt(String runId, String query) throws IOException {
+        HttpURLConnection conn = connect("/runs/" + runId + query);
         conn.setRequestMethod("POST");
         conn.setRequestProperty("Content-Length", "0");
         conn.connect();
@@ -39,7 +39,11 @@ public interface JsonHttpHandler extends HttpHandler {
     Gson GSON = new Gson();
 
     default void writeObject(Object object, HttpExchange httpExchange) throws IOException {
-        httpExchange.sendResponseHeaders(200, 0);
+        writeObject(object, 200, httpExchange);
+    }
+
+    default void writeObject(Object object, int status, HttpExchange httpExchange) throws IOException {
+        httpExchange.sendResponseHeaders(status, 0);
         BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(httpExchange.getResponseBody()));
         GSON.toJson(object, writer);
         writer.close();
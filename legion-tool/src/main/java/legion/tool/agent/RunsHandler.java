@@ -30,8 +30,11 @@ package legion.tool.agent;
 import com.codahale.metrics.MetricRegistry;
 import com.google.common.collect.Maps;
 import com.sun.net.httpserver.HttpExchange;
+import legion.runner.LoadOptions;
+import legion.runner.StopMode;
 import legion.tool.JarRunner;
 import legion.tool.agent.data.DataTools;
+import legion.tool.agent.data.IntervalsList;
 import legion.tool.agent.data.RunInfo;
 import legion.tool.agent.data.RunRequest;
 import legion.tool.agent.data.RunsList;
@@ -43,12 +46,14 @@ import java.io.BufferedReader;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.util.Arrays;
 import java.util.Map;
 import java.util.Properties;
 
 public class RunsHandler implements JsonHttpHandler {
     private static final Logger LOGGER = LoggerFactory.getLogger(RunsHandler.class);
     private static final Map<String, JarRunner> runs = Maps.newConcurrentMap();
+    private static final String RUN_ID_PATTERN = "[0-9a-f]{8}-[0-9a-f]{4}-4[0-9a-f]{3}-[89ab][0-9a-f]{3}-[0-9a-f]{12}";
 
     private static void fillRunInfo(String runId, JarRunner runner, RunInfo info) {
         info.runId = runId;
@@ -73,7 +78,11 @@ public class RunsHandler implements JsonHttpHandler {
                 } else if (method.equals("POST")) {
                     runTest(httpExchange);
                 }
-            } else if (path.matches("/runs/[0-9a-f]{8}-[0-9a-f]{4}-4[0-9a-f]{3}-[89ab][0-9a-f]{3}-[0-9a-f]{12}")) {
+            } else if (path.matches("/runs/" + RUN_ID_PATTERN + "/intervals") && method.equals("GET")) {
+                intervals(httpExchange);
+            } else if (path.matches("/runs/" + RUN_ID_PATTERN + "/adjust") && method.equals("POST")) {
+                adjustRun(httpExchange);
+            } else if (path.matches("/runs/" + RUN_ID_PATTERN)) {
                 if (method.equals("GET")) {
                     runInfo(httpExchange);
                 } else if (method.equals("POST")) {
@@ -122,6 +131,7 @@ public class RunsHandler implements JsonHttpHandler {
                 request.queriesLimit,
                 request.qpsLimit,
                 request.generatorThreadsLimit,
+                request.options,
                 request.testName,
                 properties
         );
@@ -139,24 +149,147 @@ public class RunsHandler implements JsonHttpHandler {
             httpExchange.getResponseBody().write("{\"error\":\"Run not found\"}".getBytes());
             return;
         }
+        double[] percentiles;
+        try {
+            percentiles = parsePercentiles(httpExchange.getRequestURI().getQuery());
+        } catch (NumberFormatException e) {
+            httpExchange.sendResponseHeaders(400, 0);
+            httpExchange.getResponseBody().write("{\"error\":\"Wrong percentiles\"}".getBytes());
+            return;
+        }
+        RunStats stats = new RunStats();
+        RunsHandler.fillRunInfo(runId, jarRunner, stats);
+        DataTools.fillRunStats(jarRunner.getMetrics(), percentiles, stats);
+        DataTools.fillExceptionLogStats(jarRunner.getExceptions(), stats.exceptionLog);
+        writeObject(stats, httpExchange);
+    }
+
+    private static String queryParameter(String query, String name) {
+        if (query != null) {
+            for (String parameter : query.split("&")) {
+                if (parameter.startsWith(name + "=")) {
+                    return parameter.substring(name.length() + 1);
+                }
+            }
+        }
+        return null;
+    }
+
+    // `percentiles=99.9,99.99` query parameter, default percentiles when it is absent
+    private static double[] parsePercentiles(String query) {
+        String percentiles = queryParameter(query, "percentiles");
+        if (percentiles == null) {
+            return DataTools.DEFAULT_PERCENTILES;
+        }
+        return Arrays.stream(percentiles.split(","))
+                .mapToDouble(Double::parseDouble)
+                .filter(p -> p >= 0 && p <= 100)
+                .toArray();
+    }
+
+    // intervals which overlap [from, to) milliseconds since start of the test, all kept intervals by default
+    private void intervals(HttpExchange httpExchange) throws IOException {
+        String path = httpExchange.getRequestURI().getPath();
+        String runId = path.substring(6, path.length() - 10);
+        JarRunner jarRunner = runs.get(runId);
+        if (jarRunner == null) {
+            httpExchange.sendResponseHeaders(404, 0);
+            httpExchange.getResponseBody().write("{\"error\":\"Run not found\"}".getBytes());
+            return;
+        }
+        String query = httpExchange.getRequestURI().getQuery();
+        long from;
+        long to;
+        double[] percentiles;
+        try {
+            String fromParameter = queryParameter(query, "from");
+            String toParameter = queryParameter(query, "to");
+            from = fromParameter == null ? Long.MIN_VALUE : Long.parseLong(fromParameter);
+            to = toParameter == null ? Long.MAX_VALUE : Long.parseLong(toParameter);
+            percentiles = parsePercentiles(query);
+        } catch (NumberFormatException e) {
+            httpExchange.sendResponseHeaders(400, 0);
+            httpExchange.getResponseBody().write("{\"error\":\"Wrong query parameters\"}".getBytes());
+            return;
+        }
+        IntervalsList list = new IntervalsList();
+        list.runId = runId;
+        DataTools.fillIntervals(jarRunner.getIntervals().get(from, to), percentiles, list);
+        writeObject(list, httpExchange);
+    }
+
+    // `qps=<rate>&loaders=<active loader workers>` query parameters, both are optional
+    private void adjustRun(HttpExchange httpExchange) throws IOException {
+        String path = httpExchange.getRequestURI().getPath();
+        String runId = path.substring(6, path.length() - 7);
+        JarRunner jarRunner = runs.get(runId);
+        if (jarRunner == null) {
+            httpExchange.sendResponseHeaders(404, 0);
+            httpExchange.getResponseBody().write("{\"error\":\"Run not found\"}".getBytes());
+            return;
+        }
+        String query = httpExchange.getRequestURI().getQuery();
+        String qps = queryParameter(query, "qps");
+        String loaders = queryParameter(query, "loaders");
+        try {
+            // both values are checked before either is applied
+            jarRunner.adjust(
+                    qps == null ? null : Double.parseDouble(qps),
+                    loaders == null ? null : Integer.parseInt(loaders)
+            );
+        } catch (IllegalArgumentException | IllegalStateException e) {
+            httpExchange.sendResponseHeaders(400, 0);
+            httpExchange.getResponseBody().write(GSON.toJson(Map.of("error", e.getMessage())).getBytes());
+            return;
+        }
         RunStats stats = new RunStats();
         RunsHandler.fillRunInfo(runId, jarRunner, stats);
         DataTools.fillRunStats(jarRunner.getMetrics(), stats);
+        DataTools.fillExceptionLogStats(jarRunner.getExceptions(), stats.exceptionLog);
         writeObject(stats, httpExchange);
     }
 
+    // `mode=drain|abort&timeout=<ms>` query parameters, options of the run by default. A stop may take up to
+    // the timeout, so it runs in its own thread and 202 is returned, clients poll the run until RunStats.stop
+    // is set or the run is finished
     private void interruptRun(HttpExchange httpExchange) throws IOException {
-        String runId = httpExchange.getRequestURI().getPath().substring(6, 37);
+        String runId = httpExchange.getRequestURI().getPath().substring(6);
         JarRunner jarRunner = runs.get(runId);
         if (jarRunner == null) {
             httpExchange.sendResponseHeaders(404, 0);
             httpExchange.getResponseBody().write("{\"error\":\"Run not found\"}".getBytes());
             return;
         }
-        jarRunner.interrupt();
+        String query = httpExchange.getRequestURI().getQuery();
+        String mode = queryParameter(query, "mode");
+        String timeout = queryParameter(query, "timeout");
+        LoadOptions options = jarRunner.getOptions();
+        StopMode stopMode;
+        long timeoutMs;
+        try {
+            stopMode = mode == null ? options.stopMode : StopMode.valueOf(mode.toUpperCase());
+            timeoutMs = timeout == null ? options.stopTimeoutMs : Long.parseLong(timeout);
+        } catch (IllegalArgumentException e) {
+            httpExchange.sendResponseHeaders(400, 0);
+            httpExchange.getResponseBody().write("{\"error\":\"Wrong query parameters\"}".getBytes());
+            return;
+        }
+        boolean stopping = jarRunner.isRunning();
+        if (stopping) {
+            Thread stopThread = new Thread(() -> {
+                try {
+                    jarRunner.interrupt(stopMode, timeoutMs);
+                } catch (IllegalStateException e) {
+                    LOGGER.info("Run {} is already finished", runId);
+                }
+            }, "Stop-" + runId);
+            stopThread.setDaemon(true);
+            stopThread.start();
+        }
         RunStats stats = new RunStats();
         RunsHandler.fillRunInfo(runId, jarRunner, stats);
         DataTools.fillRunStats(jarRunner.getMetrics(), stats);
-        writeObject(stats, httpExchange);
+        DataTools.fillExceptionLogStats(jarRunner.getExceptions(), stats.exceptionLog);
+        writeObject(stats, stopping ? 202 : 200, httpExchange);
     }
 }
@@ -28,12 +28,31 @@
 package legion.tool.agent.data;
 
 import com.codahale.metrics.*;
+import com.google.common.base.Throwables;
 import com.google.common.collect.Maps;
+import legion.ExceptionLog;
+import legion.IntervalLog;
+import legion.LatencyHistogram;
 import legion.Metrics;
 import legion.tool.agent.data.stats.*;
 
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+
 public class DataTools {
+    public static final double[] DEFAULT_PERCENTILES = {50, 90, 99, 99.9, 99.99};
+
+    public static String percentileName(double percentile) {
+        return BigDecimal.valueOf(percentile).stripTrailingZeros().toPlainString();
+    }
+
     public static void addHistogramValues(Sampling src, HistogramStats object) {
+        addHistogramValues(src, object, DEFAULT_PERCENTILES);
+    }
+
+    public static void addHistogramValues(Sampling src, HistogramStats object, double[] percentiles) {
         Snapshot snapshot = src.getSnapshot();
         object.setMin(snapshot.getMin());
         object.setMax(snapshot.getMax());
@@ -45,6 +64,133 @@ public class DataTools {
         object.setPercentile98(snapshot.get98thPercentile());
         object.setPercentile99(snapshot.get99thPercentile());
         object.setPercentile999(snapshot.get999thPercentile());
+        for (double percentile : percentiles) {
+            object.getPercentiles().put(percentileName(percentile), snapshot.getValue(percentile / 100));
+        }
+    }
+
+    public static void addHistogramValues(LatencyHistogram.Snapshot snapshot, HistogramStats object, double[] percentiles) {
+        object.setMin(snapshot.getMin());
+        object.setMax(snapshot.getMax());
+        object.setMean(snapshot.getMean());
+        object.setStddev(snapshot.getStdDev());
+        object.setMedian(snapshot.getValue(0.5));
+        object.setPercentile75(snapshot.getValue(0.75));
+        object.setPercentile95(snapshot.getValue(0.95));
+        object.setPercentile98(snapshot.getValue(0.98));
+        object.setPercentile99(snapshot.getValue(0.99));
+        object.setPercentile999(snapshot.getValue(0.999));
+        for (double percentile : percentiles) {
+            object.getPercentiles().put(percentileName(percentile), (double) snapshot.getValue(percentile / 100));
+        }
+    }
+
+    public static void fillIntervals(List<IntervalLog.Interval> intervals, double[] percentiles, IntervalsList list) {
+        for (IntervalLog.Interval interval : intervals) {
+            IntervalStats stats = new IntervalStats();
+            stats.start = interval.start;
+            stats.end = interval.end;
+            interval.histograms.forEach((name, snapshot) -> {
+                IntervalHistogramStats histogram = new IntervalHistogramStats();
+                histogram.setCount(snapshot.getCount());
+                addHistogramValues(snapshot, histogram, percentiles);
+                stats.histograms.put(name, histogram);
+            });
+            list.intervals.add(stats);
+        }
+    }
+
+    // rates of the meter are kept, count and mean rate are replaced by ones of the measured window after warm-up
+    private static void addMeasuredValues(Metrics metrics, Metered src, MeterStats stats, long count) {
+        addMeterValues(src, stats);
+        if (metrics.hasWarmup()) {
+            long duration = metrics.duration.getValue();
+            stats.setCount(count);
+            stats.setMeanRate(duration > 0 ? count * 1000.0 / duration : 0);
+        }
+    }
+
+    private static void addMeasuredValues(Metrics metrics, Meter src, MeterStats stats) {
+        addMeasuredValues(metrics, src, stats, metrics.measuredCount(src));
+    }
+
+    private static void addMeasuredValues(Metrics metrics, String name, Timer src, TimerStats stats, double[] percentiles) {
+        LatencyHistogram.Snapshot snapshot = metrics.measuredSnapshot(name);
+        addMeasuredValues(metrics, src, stats, snapshot.getCount());
+        addHistogramValues(snapshot, stats, percentiles);
+    }
+
+    public static void fillWarmupStats(Metrics metrics, double[] percentiles, WarmupStats stats) {
+        stats.duration = metrics.warmupDuration();
+        stats.running = metrics.isWarmingUp();
+        Metrics.Warmup warmup = metrics.getWarmup();
+        if (warmup == null) {
+            return;
+        }
+        addWarmupValues(warmup.histograms.get(Metrics.QUERIES_METRIC_NAME), stats.queries, percentiles);
+        addWarmupValues(warmup.histograms.get(Metrics.RESPONSES_METRIC_NAME), stats.responses, percentiles);
+        stats.success = warmup.success;
+        stats.exceptions = warmup.exceptions;
+        stats.timeouts = warmup.timeouts;
+    }
+
+    private static void addWarmupValues(LatencyHistogram.Snapshot snapshot, IntervalHistogramStats stats, double[] percentiles) {
+        stats.setCount(snapshot.getCount());
+        addHistogramValues(snapshot, stats, percentiles);
+    }
+
+    public static void fillTagStats(Metrics metrics, double[] percentiles, Map<String, TagStats> tags) {
+        for (Metrics.Tag tag : metrics.getTags()) {
+            String prefix = Metrics.TAGS_METRIC_PREFIX + tag.name;
+            TagStats stats = new TagStats();
+            LatencyHistogram.Snapshot queries = metrics.measuredSnapshot(prefix + Metrics.TAG_QUERIES_SUFFIX);
+            stats.queries.setCount(queries.getCount());
+            addHistogramValues(queries, stats.queries, percentiles);
+            LatencyHistogram.Snapshot responses = metrics.measuredSnapshot(prefix + Metrics.TAG_RESPONSES_SUFFIX);
+            stats.responses.setCount(responses.getCount());
+            addHistogramValues(responses, stats.responses, percentiles);
+            stats.success = metrics.measuredCount(prefix + Metrics.TAG_SUCCESS_SUFFIX);
+            stats.exceptions = metrics.measuredCount(prefix + Metrics.TAG_EXCEPTIONS_SUFFIX);
+            stats.timeouts = metrics.measuredCount(prefix + Metrics.TAG_TIMEOUTS_SUFFIX);
+            tags.put(tag.name, stats);
+        }
+    }
+
+    public static void fillExceptionLogStats(ExceptionLog log, ExceptionLogStats stats) {
+        stats.counts.putAll(log.getCounts());
+        for (ExceptionLog.Sample sample : log.getSamples()) {
+            ExceptionLogStats.Sample s = new ExceptionLogStats.Sample();
+            s.time = sample.time;
+            s.kind = sample.kind;
+            s.stackTrace = Throwables.getStackTraceAsString(sample.exception);
+            stats.samples.add(s);
+        }
+    }
+
+    public static void fillEngineStats(Metrics metrics, double[] percentiles, EngineStats stats) {
+        stats.queueDepth = metrics.queueDepth.getValue();
+        stats.activeLoaders = metrics.activeLoaders.getValue();
+        stats.pregenerated = metrics.pregenerated.get();
+        stats.pregenerationHeap = metrics.pregenerationHeap.get();
+        addHistogramValues(metrics.measuredSnapshot(Metrics.SCHEDULER_LAG_METRIC_NAME), stats.schedulerLag, percentiles);
+        SortedMap<String, Counter> counters = metrics.registry.getCounters(
+                (name, metric) -> name.startsWith(Metrics.ENGINE_METRIC_PREFIX)
+        );
+        counters.forEach((name, counter) -> {
+            String prefix = name.substring(0, name.lastIndexOf('.'));
+            String thread = prefix.substring(Metrics.ENGINE_METRIC_PREFIX.length());
+            if (name.endsWith(Metrics.BUSY_TIME_SUFFIX)) {
+                Counter idle = counters.get(prefix + Metrics.IDLE_TIME_SUFFIX);
+                stats.loaderUtilization.put(thread, share(counter, idle == null ? 0 : idle.getCount() + counter.getCount()));
+            } else if (name.endsWith(Metrics.BLOCKED_TIME_SUFFIX)) {
+                Counter running = counters.get(prefix + Metrics.RUNNING_TIME_SUFFIX);
+                stats.schedulerBlocked.put(thread, share(counter, running == null ? 0 : running.getCount()));
+            }
+        });
+    }
+
+    private static double share(Counter part, long total) {
+        return total > 0 ? (double) part.getCount() / total : 0;
     }
 
     public static void addMeterValues(Metered src, MeterStats stats) {
@@ -56,17 +202,44 @@ public class DataTools {
     }
 
     public static void addTimerValues(Timer src, TimerStats stats) {
+        addTimerValues(src, stats, DEFAULT_PERCENTILES);
+    }
+
+    public static void addTimerValues(Timer src, TimerStats stats, double[] percentiles) {
         addMeterValues(src, stats);
-        addHistogramValues(src, stats);
+        addHistogramValues(src, stats, percentiles);
     }
 
     public static void fillRunStats(Metrics metrics, RunStats stats) {
+        fillRunStats(metrics, DEFAULT_PERCENTILES, stats);
+    }
+
+    public static void fillRunStats(Metrics metrics, double[] percentiles, RunStats stats) {
         stats.duration = metrics.duration.getValue();
         stats.startDate = metrics.startDate.getValue();
-        addTimerValues(metrics.generator, stats.generator);
-        addTimerValues(metrics.queries, stats.queries);
-        addMeterValues(metrics.exceptions, stats.exceptions);
-        addMeterValues(metrics.success, stats.success);
+        addMeasuredValues(metrics, Metrics.GENERATOR_METRIC_NAME, metrics.generator, stats.generator, percentiles);
+        addMeasuredValues(metrics, Metrics.QUERIES_METRIC_NAME, metrics.queries, stats.queries, percentiles);
+        addMeasuredValues(metrics, Metrics.RESPONSES_METRIC_NAME, metrics.responses, stats.responses, percentiles);
+        addHistogramValues(metrics.measuredSnapshot(Metrics.START_LAG_METRIC_NAME), stats.startLag, percentiles);
+        addHistogramValues(metrics.measuredSnapshot(Metrics.QUEUE_WAIT_METRIC_NAME), stats.queueWait, percentiles);
+        addMeasuredValues(metrics, metrics.exceptions, stats.exceptions);
+        addMeasuredValues(metrics, metrics.timeouts, stats.timeouts);
+        addMeasuredValues(metrics, metrics.success, stats.success);
+        stats.targetRate.putAll(metrics.targetRate);
+        fillTagStats(metrics, percentiles, stats.tags);
+        fillEngineStats(metrics, percentiles, stats.engine);
+        fillWarmupStats(metrics, percentiles, stats.warmup);
+        Metrics.Stop stop = metrics.getStop();
+        if (stop != null) {
+            stats.stop = new StopStats();
+            stats.stop.mode = stop.mode;
+            stats.stop.dropped = stop.dropped;
+            stats.stop.inFlight = stop.inFlight;
+            stats.stop.completed = stop.completed;
+            stats.stop.interrupted = stop.interrupted;
+            stats.stop.abandoned = stop.abandoned;
+            stats.stop.duration = stop.duration;
+        }
 
         MetricRegistry registry = metrics.registry;
         UserDefinedStats uds = stats.userDefined;
@@ -84,7 +257,7 @@ public class DataTools {
         uds.histograms.putAll(
                 Maps.transformValues(registry.getHistograms(metricFilter), h -> {
                             HistogramStatsImpl s = new HistogramStatsImpl();
-                            addHistogramValues(h, s);
+                            addHistogramValues(h, s, percentiles);
                             return s;
                         }
                 )
@@ -92,7 +265,7 @@ public class DataTools {
         uds.timers.putAll(
                 Maps.transformValues(registry.getTimers(metricFilter), t -> {
                             TimerStats s = new TimerStats();
-                            addTimerValues(t, s);
+                            addTimerValues(t, s, percentiles);
                             return s;
                         }
                 )
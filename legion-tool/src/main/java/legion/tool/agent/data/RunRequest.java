@@ -28,6 +28,7 @@
 package legion.tool.agent.data;
 
 import com.google.common.collect.Maps;
+import legion.runner.LoadOptions;
 
 import java.util.Map;
 
@@ -40,4 +41,5 @@ public class RunRequest {
     public int qpsLimit;
     public int generatorThreadsLimit;
     public final Map<String, String> properties = Maps.newHashMap();
+    public LoadOptions options = new LoadOptions();
 }
@@ -27,6 +27,8 @@
 
 package legion.tool.agent.data.stats;
 
+import java.util.Map;
+
 public interface HistogramStats {
     double getMin();
 
@@ -67,4 +69,9 @@ public interface HistogramStats {
     double getPercentile999();
 
     void setPercentile999(double percentile999);
+
+    // values of requested percentiles by percentile, like "99.99"
+    Map<String, Double> getPercentiles();
+
+    void setPercentiles(Map<String, Double> percentiles);
 }
@@ -27,6 +27,9 @@
 
 package legion.tool.agent.data.stats;
 
+import java.util.LinkedHashMap;
+import java.util.Map;
+
 public class HistogramStatsImpl implements HistogramStats {
     private double min;
     private double max;
@@ -38,6 +41,7 @@ public class HistogramStatsImpl implements HistogramStats {
     private double percentile98;
     private double percentile99;
     private double percentile999;
+    private Map<String, Double> percentiles = new LinkedHashMap<>();
 
     @Override
     public double getMin() {
@@ -138,4 +142,14 @@ public class HistogramStatsImpl implements HistogramStats {
     public void setPercentile999(double percentile999) {
         this.percentile999 = percentile999;
     }
+
+    @Override
+    public Map<String, Double> getPercentiles() {
+        return percentiles;
+    }
+
+    @Override
+    public void setPercentiles(Map<String, Double> percentiles) {
+        this.percentiles = percentiles;
+    }
 }
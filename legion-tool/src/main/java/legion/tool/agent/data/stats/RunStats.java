@@ -29,11 +29,32 @@ package legion.tool.agent.data.stats;
 
 import legion.tool.agent.data.RunInfo;
 
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
 public class RunStats extends RunInfo {
     public final TimerStats generator = new TimerStats();
     public final TimerStats queries = new TimerStats();
+    public final TimerStats responses = new TimerStats();
+    public final HistogramStatsImpl startLag = new HistogramStatsImpl();
+    public final HistogramStatsImpl queueWait = new HistogramStatsImpl();
     public final MeterStatsImpl success = new MeterStatsImpl();
     public final MeterStatsImpl exceptions = new MeterStatsImpl();
+    // tasks which ran longer than the task timeout
+    public final MeterStatsImpl timeouts = new MeterStatsImpl();
+    // for the whole run including warm-up
+    public final ExceptionLogStats exceptionLog = new ExceptionLogStats();
+    // rates chosen by the rate controller by milliseconds since start
+    public final SortedMap<Long, Double> targetRate = new TreeMap<>();
+    // by task type in order of TaskClassifier.tags(), empty when tasks are not classified
+    public final Map<String, TagStats> tags = new LinkedHashMap<>();
+    public final EngineStats engine = new EngineStats();
+    // engine metrics above cover only the measured window, warm-up is reported separately
+    public final WarmupStats warmup = new WarmupStats();
+    // null unless the test was stopped
+    public StopStats stop;
     public final UserDefinedStats userDefined = new UserDefinedStats();
     public long startDate;
     public long duration;
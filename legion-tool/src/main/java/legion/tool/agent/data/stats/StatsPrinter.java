@@ -50,8 +50,43 @@ public class StatsPrinter {
         printMetric(iteration, ".duration", "seconds", ((double) stats.duration) / 1000);
         printTimerStats(iteration, ".generator", stats.generator);
         printTimerStats(iteration, ".queries", stats.queries);
+        printTimerStats(iteration, ".responses", stats.responses);
+        printHistogramStats(iteration, ".startLag", stats.startLag);
+        printHistogramStats(iteration, ".queueWait", stats.queueWait);
         printMeterStats(iteration, ".success", stats.success);
         printMeterStats(iteration, ".exceptions", stats.exceptions);
+        printMeterStats(iteration, ".timeouts", stats.timeouts);
+        if (!stats.targetRate.isEmpty()) {
+            printMetric(iteration, ".targetRate", "value", stats.targetRate.get(stats.targetRate.lastKey()));
+        }
+        stats.tags.forEach((tag, tagStats) -> {
+            String prefix = ".tags." + tag;
+            printHistogramStats(iteration, prefix + ".queries", tagStats.queries);
+            printHistogramStats(iteration, prefix + ".responses", tagStats.responses);
+            printMetric(iteration, prefix + ".success", "count", tagStats.success);
+            printMetric(iteration, prefix + ".exceptions", "count", tagStats.exceptions);
+            printMetric(iteration, prefix + ".timeouts", "count", tagStats.timeouts);
+        });
+        if (stats.warmup.duration > 0) {
+            printMetric(iteration, ".warmup.duration", "seconds", ((double) stats.warmup.duration) / 1000);
+            printMetric(iteration, ".warmup.queries", "count", stats.warmup.queries.getCount());
+            printHistogramStats(iteration, ".warmup.queries", stats.warmup.queries);
+        }
+        if (stats.stop != null) {
+            printMetric(iteration, ".stop.duration", "seconds", ((double) stats.stop.duration) / 1000);
+            printMetric(iteration, ".stop.dropped", "count", stats.stop.dropped);
+            printMetric(iteration, ".stop.inFlight", "count", stats.stop.inFlight);
+            printMetric(iteration, ".stop.interrupted", "count", stats.stop.interrupted);
+            printMetric(iteration, ".stop.abandoned", "count", stats.stop.abandoned);
+        }
+        EngineStats engine = stats.engine;
+        printMetric(iteration, ".engine.queueDepth", "value", engine.queueDepth);
+        printMetric(iteration, ".engine.activeLoaders", "value", engine.activeLoaders);
+        printMetric(iteration, ".engine.pregenerated", "value", engine.pregenerated);
+        printMetric(iteration, ".engine.pregenerationHeap", "bytes", engine.pregenerationHeap);
+        printHistogramStats(iteration, ".engine.schedulerLag", engine.schedulerLag);
+        engine.loaderUtilization.forEach((k, v) -> printMetric(iteration, ".engine." + k, "utilization", v));
+        engine.schedulerBlocked.forEach((k, v) -> printMetric(iteration, ".engine." + k, "blocked", v));
         UserDefinedStats uds = stats.userDefined;
         uds.gauges.forEach((k, v) -> printMetric(iteration, k, "value", v));
         uds.counters.forEach((k, v) -> printMetric(iteration, k, "value", v));
@@ -79,6 +114,7 @@ public class StatsPrinter {
         printMetric(iteration, name, "percentile98", convertDuration(stats.getPercentile98()));
         printMetric(iteration, name, "percentile99", convertDuration(stats.getPercentile99()));
         printMetric(iteration, name, "percentile999", convertDuration(stats.getPercentile999()));
+        stats.getPercentiles().forEach((k, v) -> printMetric(iteration, name, "percentile" + k, convertDuration(v)));
     }
 
     public void printTimerStats(int iteration, String name, TimerStats stats) {
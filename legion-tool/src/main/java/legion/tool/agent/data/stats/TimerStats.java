@@ -27,6 +27,9 @@
 
 package legion.tool.agent.data.stats;
 
+import java.util.LinkedHashMap;
+import java.util.Map;
+
 public class TimerStats implements MeterStats, HistogramStats {
     private long count;
     private double meanRate;
@@ -44,6 +47,7 @@ public class TimerStats implements MeterStats, HistogramStats {
     private double percentile98;
     private double percentile99;
     private double percentile999;
+    private Map<String, Double> percentiles = new LinkedHashMap<>();
 
     @Override
     public long getCount() {
@@ -194,4 +198,14 @@ public class TimerStats implements MeterStats, HistogramStats {
     public void setPercentile999(double percentile999) {
         this.percentile999 = percentile999;
     }
+
+    @Override
+    public Map<String, Double> getPercentiles() {
+        return percentiles;
+    }
+
+    @Override
+    public void setPercentiles(Map<String, Double> percentiles) {
+        this.percentiles = percentiles;
+    }
 }
@@ -45,8 +45,10 @@ import legion.tool.cli.commands.DelAgent;
 import legion.tool.cli.commands.Help;
 import legion.tool.cli.commands.Jars;
 import legion.tool.cli.commands.JarsUpload;
+import legion.tool.cli.commands.TestAdjust;
 import legion.tool.cli.commands.TestRun;
 import legion.tool.cli.commands.TestStats;
+import legion.tool.cli.commands.TestStop;
 import legion.tool.cli.commands.Tests;
 import legion.tool.cli.completers.CommandsCompleter;
 import org.jline.reader.Completer;
@@ -89,6 +91,8 @@ public class OrchEngine {
                 new TestRun(this),
                 new Tests(this),
                 new TestStats(this),
+                new TestStop(this),
+                new TestAdjust(this),
                 new Help(this)
         );
     }
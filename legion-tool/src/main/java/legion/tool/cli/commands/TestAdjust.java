@@ -0,0 +1,99 @@
+/*
+ * Copyright (c) 2015, IponWeb (http://www.iponweb.com)
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the <organization> nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package legion.tool.cli.commands;
+
+import com.beust.jcommander.Parameter;
+import com.beust.jcommander.Parameters;
+import legion.tool.agent.data.stats.RunStats;
+import legion.tool.cli.AgentInfo;
+import legion.tool.cli.OrchEngine;
+import legion.tool.cli.OrchTestInfo;
+import org.jline.reader.Completer;
+import org.jline.reader.impl.completer.AggregateCompleter;
+import org.jline.reader.impl.completer.ArgumentCompleter;
+import org.jline.reader.impl.completer.StringsCompleter;
+
+import java.io.IOException;
+
+// changes QPS limit (per agent, as in test-run) and number of active loader workers of a running test
+@Parameters(commandNames = "test-adjust")
+public class TestAdjust implements OrchEngine.Command {
+    @Parameter(names = "-test", required = true)
+    String testId;
+
+    @Parameter(names = "-qps-limit")
+    Double qpsLimit;
+
+    @Parameter(names = "-active-loaders")
+    Integer activeLoaders;
+
+    private OrchEngine orchEngine;
+
+    public TestAdjust(OrchEngine orchEngine) {
+        this.orchEngine = orchEngine;
+    }
+
+    @Override
+    public void run() throws Exception {
+        if (qpsLimit == null && activeLoaders == null) {
+            System.out.println("Nothing to change: set -qps-limit or -active-loaders");
+            return;
+        }
+        OrchTestInfo test = orchEngine.collectTests().get(testId);
+        if (test == null) {
+            System.out.println("Test is not found");
+            return;
+        }
+        for (AgentInfo agent : test.agents) {
+            RunStats stats;
+            try {
+                stats = agent.client().adjust(testId, qpsLimit, activeLoaders);
+            } catch (IOException e) {
+                System.out.printf("= %s: %s\n", agent, e.getMessage());
+                continue;
+            }
+            System.out.printf("= %s ==\n", agent);
+            if (!stats.targetRate.isEmpty()) {
+                System.out.printf("  Target rate: %.1f qps\n", stats.targetRate.get(stats.targetRate.lastKey()));
+            }
+            System.out.printf("  Active loaders: %s\n", stats.engine.activeLoaders);
+        }
+    }
+
+    public Completer completer() {
+        var c = new ArgumentCompleter(
+                new StringsCompleter("test-adjust"),
+                new AggregateCompleter(
+                        new StringsCompleter("-test"),
+                        new StringsCompleter("-qps-limit"),
+                        new StringsCompleter("-active-loaders")
+                )
+        );
+        c.setStrict(true);
+        return c;
+    }
+}
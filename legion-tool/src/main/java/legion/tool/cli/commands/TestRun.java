@@ -32,6 +32,15 @@ import com.beust.jcommander.Parameters;
 import com.beust.jcommander.internal.Lists;
 import com.google.common.base.Joiner;
 import com.google.common.collect.ImmutableList;
+import legion.LatencyHistogram;
+import legion.runner.ArrivalProcess;
+import legion.runner.ExecutionMode;
+import legion.runner.LoadOptions;
+import legion.runner.LoadProfile;
+import legion.runner.Pacing;
+import legion.runner.QueueType;
+import legion.runner.SloTarget;
+import legion.runner.TimeoutPolicy;
 import legion.tool.agent.data.stats.RunStats;
 import legion.tool.agent.data.stats.StatsPrinter;
 import legion.tool.cli.AgentInfo;
@@ -70,6 +79,73 @@ public class TestRun implements OrchEngine.Command {
     @Parameter(names = "-gen-threads-limit")
     int generatorThreadsLimit = 5;
 
+    @Parameter(names = "-queue")
+    QueueType queueType = QueueType.BLOCKING;
+
+    @Parameter(names = "-queue-capacity")
+    int queueCapacity = 10000;
+
+    @Parameter(names = "-execution")
+    ExecutionMode executionMode = ExecutionMode.PLATFORM_THREADS;
+
+    @Parameter(names = "-concurrency")
+    int loaderConcurrency = -1;
+
+    @Parameter(names = "-active-loaders")
+    int activeLoaders = -1;
+
+    @Parameter(names = "-max-in-flight")
+    int maxInFlight = 1000;
+
+    @Parameter(names = "-pacing")
+    Pacing pacing = Pacing.SLEEP;
+
+    @Parameter(names = "-load-profile")
+    String loadProfile;
+
+    @Parameter(names = "-arrivals")
+    String arrivalProcess = "constant";
+
+    @Parameter(names = "-arrival-seed")
+    long arrivalSeed = 0;
+
+    @Parameter(names = "-slo-latency")
+    double sloLatencyMs = -1;
+
+    @Parameter(names = "-slo-percentile")
+    double sloPercentile = 0.99;
+
+    @Parameter(names = "-slo-error-rate")
+    double sloErrorRate = 0.01;
+
+    @Parameter(names = "-slo-initial-rate")
+    double sloInitialRate = 100;
+
+    @Parameter(names = "-histogram-digits")
+    int histogramDigits = LatencyHistogram.DEFAULT_SIGNIFICANT_DIGITS;
+
+    @Parameter(names = "-interval-ms")
+    int intervalMs = 1000;
+
+    @Parameter(names = "-pregenerate")
+    int pregenerate = 0;
+
+    @Parameter(names = "-trace-speed")
+    double traceSpeed = 1;
+
+    // negative value turns on detection of the steady state
+    @Parameter(names = "-warmup")
+    int warmupSeconds = 0;
+
+    @Parameter(names = "-max-warmup")
+    int maxWarmupSeconds = 60;
+
+    @Parameter(names = "-task-timeout-ms")
+    long taskTimeoutMs = 0;
+
+    @Parameter(names = "-timeout-policy")
+    TimeoutPolicy timeoutPolicy = TimeoutPolicy.CAP;
+
     @Parameter(names = "-logs")
     boolean logs = false;
 
@@ -102,15 +178,78 @@ public class TestRun implements OrchEngine.Command {
             String value = p.substring(eqIndex + 1, p.length());
             props.setProperty(key, value);
         }
+        if (loadProfile != null) {
+            try {
+                LoadProfile.parse(loadProfile);
+            } catch (IllegalArgumentException e) {
+                System.out.println(e.getMessage());
+                return;
+            }
+        }
+        if (!(traceSpeed > 0)) {
+            System.out.println("Trace speed must be positive");
+            return;
+        }
+        if (histogramDigits < 1 || histogramDigits > LatencyHistogram.MAX_SIGNIFICANT_DIGITS) {
+            System.out.printf("Histogram digits must be from 1 to %s\n", LatencyHistogram.MAX_SIGNIFICANT_DIGITS);
+            return;
+        }
+        try {
+            ArrivalProcess.parse(arrivalProcess, arrivalSeed);
+        } catch (IllegalArgumentException e) {
+            System.out.println(e.getMessage());
+            return;
+        }
         System.out.printf("Run test on agents: %s\n", Joiner.on(", ").join(info.agents.stream().map(a -> a.host + ":" + a.port).iterator()));
         System.out.printf("Test ID: %s\n", runId);
 
+        LoadOptions options = new LoadOptions();
+        options.queueType = queueType;
+        options.queueCapacity = queueCapacity;
+        options.executionMode = executionMode;
+        options.loaderConcurrency = loaderConcurrency;
+        options.activeLoaders = activeLoaders;
+        options.maxInFlight = maxInFlight;
+        options.pacing = pacing;
+        options.loadProfile = loadProfile;
+        options.arrivalProcess = arrivalProcess;
+        options.histogramDigits = histogramDigits;
+        options.intervalMs = intervalMs;
+        options.pregenerate = pregenerate;
+        options.traceSpeed = traceSpeed;
+        options.warmupSeconds = warmupSeconds;
+        options.maxWarmupSeconds = maxWarmupSeconds;
+        options.taskTimeoutMs = taskTimeoutMs;
+        options.timeoutPolicy = timeoutPolicy;
+        if (sloLatencyMs > 0) {
+            options.slo = new SloTarget();
+            options.slo.latencyMs = sloLatencyMs;
+            options.slo.percentile = sloPercentile;
+            options.slo.maxErrorRate = sloErrorRate;
+            options.slo.initialRate = sloInitialRate;
+            if (qpsLimit > 0) {
+                options.slo.maxRate = qpsLimit;
+            }
+        }
+
         props.setProperty("agents", Integer.toString(info.agents.size()));
         int agentIndex = 0;
         for (AgentInfo agent : info.agents) {
             Properties agentProperties = new Properties(props);
-            agentProperties.setProperty("agent-index", Integer.toString(agentIndex++));
-            agent.client().run(runId, jarId, testName, durationLimit, queriesLimit, qpsLimit, generatorThreadsLimit, agentProperties);
+            agentProperties.setProperty("agent-index", Integer.toString(agentIndex));
+            // agents get different seeds, otherwise their arrivals would be synchronized
+            options.arrivalSeed = arrivalSeed + agentIndex++;
+            agent.client().run(
+                    runId,
+                    jarId,
+                    testName,
+                    durationLimit,
+                    queriesLimit,
+                    qpsLimit,
+                    generatorThreadsLimit,
+                    options,
+                    agentProperties
+            );
         }
 
         if (logs) {
@@ -182,6 +321,28 @@ public class TestRun implements OrchEngine.Command {
                 new StringsCompleter("-queries-limit"),
                 new StringsCompleter("-qps-limit"),
                 new StringsCompleter("-gen-threads-limit"),
+                new StringsCompleter("-queue"),
+                new StringsCompleter("-queue-capacity"),
+                new StringsCompleter("-execution"),
+                new StringsCompleter("-concurrency"),
+                new StringsCompleter("-active-loaders"),
+                new StringsCompleter("-max-in-flight"),
+                new StringsCompleter("-pacing"),
+                new StringsCompleter("-load-profile"),
+                new StringsCompleter("-arrivals"),
+                new StringsCompleter("-arrival-seed"),
+                new StringsCompleter("-slo-latency"),
+                new StringsCompleter("-slo-percentile"),
+                new StringsCompleter("-slo-error-rate"),
+                new StringsCompleter("-slo-initial-rate"),
+                new StringsCompleter("-histogram-digits"),
+                new StringsCompleter("-interval-ms"),
+                new StringsCompleter("-pregenerate"),
+                new StringsCompleter("-trace-speed"),
+                new StringsCompleter("-warmup"),
+                new StringsCompleter("-max-warmup"),
+                new StringsCompleter("-task-timeout-ms"),
+                new StringsCompleter("-timeout-policy"),
                 new StringsCompleter("-logs"),
                 new StringsCompleter("-p")
         );
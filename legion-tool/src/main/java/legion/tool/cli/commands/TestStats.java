@@ -29,6 +29,8 @@ package legion.tool.cli.commands;
 
 import com.beust.jcommander.Parameter;
 import com.beust.jcommander.Parameters;
+import com.google.common.collect.Lists;
+import legion.tool.agent.data.stats.ExceptionLogStats;
 import legion.tool.agent.data.stats.RunStats;
 import legion.tool.cli.AgentInfo;
 import legion.tool.cli.OrchEngine;
@@ -38,10 +40,16 @@ import org.jline.reader.impl.completer.AggregateCompleter;
 import org.jline.reader.impl.completer.ArgumentCompleter;
 import org.jline.reader.impl.completer.StringsCompleter;
 
+import java.util.List;
+
 @Parameters(commandNames = "test-stats")
 public class TestStats implements OrchEngine.Command {
     @Parameter(names = "-test", required = true)
     String testId;
+
+    @Parameter(names = "-percentiles", variableArity = true)
+    List<String> percentiles = Lists.newArrayList();
+
     private OrchEngine orchEngine;
 
     public TestStats(OrchEngine orchEngine) {
@@ -56,14 +64,67 @@ public class TestStats implements OrchEngine.Command {
             return;
         }
         for (AgentInfo agent : test.agents) {
-            RunStats stats = agent.client().stats(testId);
+            RunStats stats = agent.client().stats(testId, percentiles);
             System.out.printf("= %s (start: %s, duration: %s) ==\n", agent, stats.startDate, stats.duration);
+            if (stats.warmup.duration > 0) {
+                System.out.printf(
+                        "  Warm-up: %s (%sms, queries: %s)\n",
+                        stats.warmup.running ? "running" : "done",
+                        stats.warmup.duration,
+                        stats.warmup.queries.getCount()
+                );
+            }
             System.out.printf(
-                    "  Queries: %s (success: %s, exceptions: %s)\n",
+                    "  Queries: %s (success: %s, exceptions: %s, timeouts: %s)\n",
                     stats.queries.getCount(),
                     stats.success.getCount(),
-                    stats.exceptions.getCount()
+                    stats.exceptions.getCount(),
+                    stats.timeouts.getCount()
+            );
+            System.out.printf(
+                    "  Latency 99%%: %.3fms (service), %.3fms (response)\n",
+                    stats.queries.getPercentile99() / 1000000,
+                    stats.responses.getPercentile99() / 1000000
+            );
+            stats.responses.getPercentiles().forEach(
+                    (p, v) -> System.out.printf("  Response latency %s%%: %.3fms\n", p, v / 1000000)
+            );
+            System.out.printf(
+                    "  Engine: queue depth %s, scheduler lag 99%%: %.3fms, queue wait 99%%: %.3fms\n",
+                    stats.engine.queueDepth,
+                    stats.engine.schedulerLag.getPercentile99() / 1000000,
+                    stats.queueWait.getPercentile99() / 1000000
+            );
+            stats.tags.forEach((tag, tagStats) -> System.out.printf(
+                    "  %s: %s queries (exceptions: %s, timeouts: %s), 99%%: %.3fms (service), %.3fms (response)\n",
+                    tag,
+                    tagStats.queries.getCount(),
+                    tagStats.exceptions,
+                    tagStats.timeouts,
+                    tagStats.queries.getPercentile99() / 1000000,
+                    tagStats.responses.getPercentile99() / 1000000
+            ));
+            if (stats.engine.pregenerated > 0) {
+                System.out.printf(
+                        "  Pre-generated: %s tasks, heap growth %.1fMB\n",
+                        stats.engine.pregenerated,
+                        stats.engine.pregenerationHeap / 1048576.0
+                );
+            }
+            stats.engine.loaderUtilization.forEach(
+                    (t, v) -> System.out.printf("  %s busy: %.1f%%\n", t, v * 100)
+            );
+            stats.engine.schedulerBlocked.forEach(
+                    (t, v) -> System.out.printf("  %s blocked in queue: %.1f%%\n", t, v * 100)
             );
+            if (!stats.targetRate.isEmpty()) {
+                System.out.printf("  Target rate: %.1f qps\n", stats.targetRate.get(stats.targetRate.lastKey()));
+            }
+            stats.exceptionLog.counts.forEach((kind, count) -> System.out.printf("  Exception %s: %s\n", kind, count));
+            if (!stats.exceptionLog.samples.isEmpty()) {
+                ExceptionLogStats.Sample last = stats.exceptionLog.samples.get(stats.exceptionLog.samples.size() - 1);
+                System.out.printf("  Last sampled exception:\n%s", last.stackTrace);
+            }
         }
     }
 
@@ -71,7 +132,8 @@ public class TestStats implements OrchEngine.Command {
         var c = new ArgumentCompleter(
                 new StringsCompleter("test-stats"),
                 new AggregateCompleter(
-                        new StringsCompleter("-test")
+                        new StringsCompleter("-test"),
+                        new StringsCompleter("-percentiles")
                 )
         );
         c.setStrict(true);
@@ -0,0 +1,110 @@
+/*
+ * Copyright (c) 2015, IponWeb (http://www.iponweb.com)
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the <organization> nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package legion.tool.cli.commands;
+
+import com.beust.jcommander.Parameter;
+import com.beust.jcommander.Parameters;
+import legion.runner.StopMode;
+import legion.tool.agent.data.stats.RunStats;
+import legion.tool.agent.data.stats.StopStats;
+import legion.tool.cli.AgentInfo;
+import legion.tool.cli.OrchEngine;
+import legion.tool.cli.OrchTestInfo;
+import org.jline.reader.Completer;
+import org.jline.reader.impl.completer.AggregateCompleter;
+import org.jline.reader.impl.completer.ArgumentCompleter;
+import org.jline.reader.impl.completer.StringsCompleter;
+
+@Parameters(commandNames = "test-stop")
+public class TestStop implements OrchEngine.Command {
+    @Parameter(names = "-test", required = true)
+    String testId;
+
+    private static final long POLL_MS = 100;
+
+    // options of the run when not set
+    @Parameter(names = "-mode")
+    StopMode mode;
+
+    @Parameter(names = "-timeout-ms")
+    Long timeoutMs;
+
+    private OrchEngine orchEngine;
+
+    public TestStop(OrchEngine orchEngine) {
+        this.orchEngine = orchEngine;
+    }
+
+    @Override
+    public void run() throws Exception {
+        OrchTestInfo test = orchEngine.collectTests().get(testId);
+        if (test == null) {
+            System.out.println("Test is not found");
+            return;
+        }
+        // agents stop their runs in parallel
+        for (AgentInfo agent : test.agents) {
+            agent.client().interrupt(testId, mode, timeoutMs);
+        }
+        for (AgentInfo agent : test.agents) {
+            RunStats stats = agent.client().stats(testId);
+            while (stats.stop == null && stats.isRunning) {
+                Thread.sleep(POLL_MS);
+                stats = agent.client().stats(testId);
+            }
+            StopStats stop = stats.stop;
+            if (stop == null) {
+                System.out.printf("= %s: test is already finished\n", agent);
+                continue;
+            }
+            System.out.printf("= %s (%s in %sms) ==\n", agent, stop.mode, stop.duration);
+            System.out.printf(
+                    "  Tasks: %s dropped, %s in flight, %s completed while stopping\n",
+                    stop.dropped,
+                    stop.inFlight,
+                    stop.completed
+            );
+            if (stop.interrupted > 0) {
+                System.out.printf("  Loader threads: %s interrupted, %s left behind\n", stop.interrupted, stop.abandoned);
+            }
+        }
+    }
+
+    public Completer completer() {
+        var c = new ArgumentCompleter(
+                new StringsCompleter("test-stop"),
+                new AggregateCompleter(
+                        new StringsCompleter("-test"),
+                        new StringsCompleter("-mode"),
+                        new StringsCompleter("-timeout-ms")
+                )
+        );
+        c.setStrict(true);
+        return c;
+    }
+}
@@ -13,16 +13,36 @@ public class RunStatsTest {
         assertEquals("{\"generator\":{\"count\":0,\"meanRate\":0.0,\"oneMinuteRate\":0.0," +
                 "\"fiveMinutesRate\":0.0,\"fifteenMinutesRate\":0.0,\"min\":0.0,\"max\":0.0,\"mean\":0.0," +
                 "\"stddev\":0.0,\"median\":0.0,\"percentile75\":0.0,\"percentile95\":0.0,\"percentile98\":0.0," +
-                "\"percentile99\":0.0,\"percentile999\":0.0},\"queries\":{\"count\":0,\"meanRate\":0.0," +
-                "\"oneMinuteRate\":0.0,\"fiveMinutesRate\":0.0,\"fifteenMinutesRate\":0.0,\"min\":0.0,\"max\":0.0," +
+                "\"percentile99\":0.0,\"percentile999\":0.0,\"percentiles\":{}},\"queries\":{\"count\":0," +
+                "\"meanRate\":0.0,\"oneMinuteRate\":0.0,\"fiveMinutesRate\":0.0,\"fifteenMinutesRate\":0.0," +
+                "\"min\":0.0,\"max\":0.0,\"mean\":0.0,\"stddev\":0.0,\"median\":0.0,\"percentile75\":0.0," +
+                "\"percentile95\":0.0,\"percentile98\":0.0,\"percentile99\":0.0,\"percentile999\":0.0," +
+                "\"percentiles\":{}},\"responses\":{\"count\":0,\"meanRate\":0.0,\"oneMinuteRate\":0.0," +
+                "\"fiveMinutesRate\":0.0,\"fifteenMinutesRate\":0.0,\"min\":0.0,\"max\":0.0,\"mean\":0.0," +
+                "\"stddev\":0.0,\"median\":0.0,\"percentile75\":0.0,\"percentile95\":0.0,\"percentile98\":0.0," +
+                "\"percentile99\":0.0,\"percentile999\":0.0,\"percentiles\":{}},\"startLag\":{\"min\":0.0," +
+                "\"max\":0.0,\"mean\":0.0,\"stddev\":0.0,\"median\":0.0,\"percentile75\":0.0," +
+                "\"percentile95\":0.0,\"percentile98\":0.0,\"percentile99\":0.0,\"percentile999\":0.0," +
+                "\"percentiles\":{}},\"queueWait\":{\"min\":0.0,\"max\":0.0,\"mean\":0.0,\"stddev\":0.0," +
+                "\"median\":0.0,\"percentile75\":0.0,\"percentile95\":0.0,\"percentile98\":0.0," +
+                "\"percentile99\":0.0,\"percentile999\":0.0,\"percentiles\":{}},\"success\":{\"count\":0," +
+                "\"meanRate\":0.0,\"oneMinuteRate\":0.0,\"fiveMinutesRate\":0.0,\"fifteenMinutesRate\":0.0}," +
+                "\"exceptions\":{\"count\":0,\"meanRate\":0.0,\"oneMinuteRate\":0.0,\"fiveMinutesRate\":0.0," +
+                "\"fifteenMinutesRate\":0.0},\"timeouts\":{\"count\":0,\"meanRate\":0.0,\"oneMinuteRate\":0.0," +
+                "\"fiveMinutesRate\":0.0,\"fifteenMinutesRate\":0.0},\"exceptionLog\":{\"counts\":{}," +
+                "\"samples\":[]},\"targetRate\":{},\"tags\":{},\"engine\":{\"queueDepth\":0,\"activeLoaders\":0," +
+                "\"pregenerated\":0,\"pregenerationHeap\":0,\"schedulerLag\":{\"min\":0.0,\"max\":0.0," +
+                "\"mean\":0.0,\"stddev\":0.0,\"median\":0.0,\"percentile75\":0.0,\"percentile95\":0.0," +
+                "\"percentile98\":0.0,\"percentile99\":0.0,\"percentile999\":0.0,\"percentiles\":{}}," +
+                "\"loaderUtilization\":{},\"schedulerBlocked\":{}},\"warmup\":{\"duration\":0,\"running\":false," +
+                "\"queries\":{\"count\":0,\"min\":0.0,\"max\":0.0,\"mean\":0.0,\"stddev\":0.0,\"median\":0.0," +
+                "\"percentile75\":0.0,\"percentile95\":0.0,\"percentile98\":0.0,\"percentile99\":0.0," +
+                "\"percentile999\":0.0,\"percentiles\":{}},\"responses\":{\"count\":0,\"min\":0.0,\"max\":0.0," +
                 "\"mean\":0.0,\"stddev\":0.0,\"median\":0.0,\"percentile75\":0.0,\"percentile95\":0.0," +
-                "\"percentile98\":0.0,\"percentile99\":0.0,\"percentile999\":0.0},\"success\":" +
-                "{\"count\":0,\"meanRate\":0.0,\"oneMinuteRate\":0.0,\"fiveMinutesRate\":0.0," +
-                "\"fifteenMinutesRate\":0.0},\"exceptions\":{\"count\":0,\"meanRate\":0.0," +
-                "\"oneMinuteRate\":0.0,\"fiveMinutesRate\":0.0,\"fifteenMinutesRate\":0.0}," +
-                "\"userDefined\":{\"gauges\":{},\"counters\":{},\"meters\":{},\"histograms\":{}," +
-                "\"timers\":{}},\"startDate\":0,\"duration\":0,\"durationLimit\":0," +
-                "\"queriesLimit\":0,\"qpsLimit\":0,\"isRunning\":false}", gson);
+                "\"percentile98\":0.0,\"percentile99\":0.0,\"percentile999\":0.0,\"percentiles\":{}}," +
+                "\"success\":0,\"exceptions\":0,\"timeouts\":0},\"userDefined\":{\"gauges\":{},\"counters\":{}," +
+                "\"meters\":{},\"histograms\":{},\"timers\":{}},\"startDate\":0,\"duration\":0," +
+                "\"durationLimit\":0,\"queriesLimit\":0,\"qpsLimit\":0,\"isRunning\":false}", gson);
     }
 
     @Test
@@ -30,15 +50,35 @@ public class RunStatsTest {
         new Gson().fromJson("{\"generator\":{\"count\":0,\"meanRate\":0.0,\"oneMinuteRate\":0.0," +
                 "\"fiveMinutesRate\":0.0,\"fifteenMinutesRate\":0.0,\"min\":0.0,\"max\":0.0,\"mean\":0.0," +
                 "\"stddev\":0.0,\"median\":0.0,\"percentile75\":0.0,\"percentile95\":0.0,\"percentile98\":0.0," +
-                "\"percentile99\":0.0,\"percentile999\":0.0},\"queries\":{\"count\":0,\"meanRate\":0.0," +
-                "\"oneMinuteRate\":0.0,\"fiveMinutesRate\":0.0,\"fifteenMinutesRate\":0.0,\"min\":0.0,\"max\":0.0," +
+                "\"percentile99\":0.0,\"percentile999\":0.0,\"percentiles\":{}},\"queries\":{\"count\":0," +
+                "\"meanRate\":0.0,\"oneMinuteRate\":0.0,\"fiveMinutesRate\":0.0,\"fifteenMinutesRate\":0.0," +
+                "\"min\":0.0,\"max\":0.0,\"mean\":0.0,\"stddev\":0.0,\"median\":0.0,\"percentile75\":0.0," +
+                "\"percentile95\":0.0,\"percentile98\":0.0,\"percentile99\":0.0,\"percentile999\":0.0," +
+                "\"percentiles\":{}},\"responses\":{\"count\":0,\"meanRate\":0.0,\"oneMinuteRate\":0.0," +
+                "\"fiveMinutesRate\":0.0,\"fifteenMinutesRate\":0.0,\"min\":0.0,\"max\":0.0,\"mean\":0.0," +
+                "\"stddev\":0.0,\"median\":0.0,\"percentile75\":0.0,\"percentile95\":0.0,\"percentile98\":0.0," +
+                "\"percentile99\":0.0,\"percentile999\":0.0,\"percentiles\":{}},\"startLag\":{\"min\":0.0," +
+                "\"max\":0.0,\"mean\":0.0,\"stddev\":0.0,\"median\":0.0,\"percentile75\":0.0," +
+                "\"percentile95\":0.0,\"percentile98\":0.0,\"percentile99\":0.0,\"percentile999\":0.0," +
+                "\"percentiles\":{}},\"queueWait\":{\"min\":0.0,\"max\":0.0,\"mean\":0.0,\"stddev\":0.0," +
+                "\"median\":0.0,\"percentile75\":0.0,\"percentile95\":0.0,\"percentile98\":0.0," +
+                "\"percentile99\":0.0,\"percentile999\":0.0,\"percentiles\":{}},\"success\":{\"count\":0," +
+                "\"meanRate\":0.0,\"oneMinuteRate\":0.0,\"fiveMinutesRate\":0.0,\"fifteenMinutesRate\":0.0}," +
+                "\"exceptions\":{\"count\":0,\"meanRate\":0.0,\"oneMinuteRate\":0.0,\"fiveMinutesRate\":0.0," +
+                "\"fifteenMinutesRate\":0.0},\"timeouts\":{\"count\":0,\"meanRate\":0.0,\"oneMinuteRate\":0.0," +
+                "\"fiveMinutesRate\":0.0,\"fifteenMinutesRate\":0.0},\"exceptionLog\":{\"counts\":{}," +
+                "\"samples\":[]},\"targetRate\":{},\"tags\":{},\"engine\":{\"queueDepth\":0,\"activeLoaders\":0," +
+                "\"pregenerated\":0,\"pregenerationHeap\":0,\"schedulerLag\":{\"min\":0.0,\"max\":0.0," +
+                "\"mean\":0.0,\"stddev\":0.0,\"median\":0.0,\"percentile75\":0.0,\"percentile95\":0.0," +
+                "\"percentile98\":0.0,\"percentile99\":0.0,\"percentile999\":0.0,\"percentiles\":{}}," +
+                "\"loaderUtilization\":{},\"schedulerBlocked\":{}},\"warmup\":{\"duration\":0,\"running\":false," +
+                "\"queries\":{\"count\":0,\"min\":0.0,\"max\":0.0,\"mean\":0.0,\"stddev\":0.0,\"median\":0.0," +
+                "\"percentile75\":0.0,\"percentile95\":0.0,\"percentile98\":0.0,\"percentile99\":0.0," +
+                "\"percentile999\":0.0,\"percentiles\":{}},\"responses\":{\"count\":0,\"min\":0.0,\"max\":0.0," +
                 "\"mean\":0.0,\"stddev\":0.0,\"median\":0.0,\"percentile75\":0.0,\"percentile95\":0.0," +
-                "\"percentile98\":0.0,\"percentile99\":0.0,\"percentile999\":0.0},\"success\":" +
-                "{\"count\":0,\"meanRate\":0.0,\"oneMinuteRate\":0.0,\"fiveMinutesRate\":0.0," +
-                "\"fifteenMinutesRate\":0.0},\"exceptions\":{\"count\":0,\"meanRate\":0.0," +
-                "\"oneMinuteRate\":0.0,\"fiveMinutesRate\":0.0,\"fifteenMinutesRate\":0.0}," +
-                "\"userDefined\":{\"gauges\":{},\"counters\":{},\"meters\":{},\"histograms\":{}," +
-                "\"timers\":{}},\"startDate\":0,\"duration\":0,\"durationLimit\":0," +
-                "\"queriesLimit\":0,\"qpsLimit\":0,\"isRunning\":false}\n", RunStats.class);
+                "\"percentile98\":0.0,\"percentile99\":0.0,\"percentile999\":0.0,\"percentiles\":{}}," +
+                "\"success\":0,\"exceptions\":0,\"timeouts\":0},\"userDefined\":{\"gauges\":{},\"counters\":{}," +
+                "\"meters\":{},\"histograms\":{},\"timers\":{}},\"startDate\":0,\"duration\":0," +
+                "\"durationLimit\":0,\"queriesLimit\":0,\"qpsLimit\":0,\"isRunning\":false}\n", RunStats.class);
     }
 }
\ No newline at end of file